@@ -0,0 +1,242 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A class that solves many TSP instances in one run of the program, so that
+ * the JVM is started, and the JIT compiler warmed up, only once. The instances
+ * are solved concurrently on a work-stealing pool with a time budget per
+ * instance, every worker thread keeps one solver whose buffers are reused from
+ * one instance to the next, and the result of every instance is written as
+ * one line of JSON as soon as it is solved.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class BatchSolver {
+
+    /*
+     * The most samples of VBSS, or generations of the genetic algorithm, that
+     * are used on an instance, matching the single-instance modes of
+     * Homework12.
+     */
+    private static final int VBSS_SAMPLES = 10000;
+
+    private static final int GA_GENERATIONS = 25000;
+
+    private static final int VBSS_SLICE_SAMPLES = 10;
+
+    private static final int GA_SLICE_GENERATIONS = 100;
+
+    private int parallelism;
+
+    private long millisecondsPerJob;
+
+    /*
+     * Whether to use the genetic algorithm rather than VBSS.
+     */
+    private boolean geneticAlgorithm;
+
+    /*
+     * The solver of each worker thread, reused from one instance to the next.
+     */
+    private ThreadLocal<TSPSolver> solvers = ThreadLocal.withInitial(
+            () -> new TSPSolver(50, 0, 0));
+
+    private BufferedWriter output;
+
+    /**
+     * @param parallelism The number of instances solved at the same time.
+     * @param millisecondsPerJob The time budget of each instance.
+     * @param geneticAlgorithm true to solve the instances with the genetic
+     * algorithm, false to solve them with VBSS.
+     */
+    public BatchSolver(int parallelism, long millisecondsPerJob, boolean geneticAlgorithm) {
+        this.parallelism = parallelism;
+        this.millisecondsPerJob = millisecondsPerJob;
+        this.geneticAlgorithm = geneticAlgorithm;
+    }
+
+    /**
+     * Lists the TSPLIB files to solve.
+     *
+     * @param path Either a directory, in which case every file in it with a
+     * .tsp extension is listed, or a manifest file with one file name per line.
+     * Blank lines and lines starting with # in a manifest are skipped, and
+     * relative file names are relative to the directory of the manifest.
+     * @return The names of the files.
+     * @throws IOException If the directory or manifest cannot be read.
+     */
+    public static List<String> listInstances(String path) throws IOException {
+        File file = new File(path);
+        List<String> instances = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles((directory, name) -> name.endsWith(".tsp"));
+            Arrays.sort(files);
+            for (File instance : files) {
+                instances.add(instance.getPath());
+            }
+        }
+        else {
+            for (String line : Files.readAllLines(file.toPath())) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                File instance = new File(line);
+                if (!instance.isAbsolute()) {
+                    instance = new File(file.getAbsoluteFile().getParentFile(), line);
+                }
+                instances.add(instance.getPath());
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Solves every instance and writes the results to a file, one JSON object
+     * per line in the order in which the instances finish. An instance that
+     * cannot be solved, for whatever reason, gets a line with an "error" field
+     * instead of a tour, and the other instances carry on.
+     * The largest instances are started first, which balances the load across
+     * the threads and keeps instances of similar sizes together, so that the
+     * solver buffers can be reused.
+     *
+     * @param instances The names of the TSPLIB files to solve.
+     * @param outputFile The name of the file to write the results to.
+     * @throws Exception If the output file cannot be written.
+     */
+    public void run(List<String> instances, String outputFile) throws Exception {
+        List<String> sorted = new ArrayList<>(instances);
+        sorted.sort((a, b) -> Long.compare(new File(b).length(), new File(a).length()));
+
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            this.output = writer;
+            List<Future<?>> jobs = new ArrayList<>();
+            for (String instance : sorted) {
+                jobs.add(pool.submit(() -> {
+                    this.write(this.solve(instance));
+                    return null;
+                }));
+            }
+            for (Future<?> job : jobs) {
+                job.get();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Solves one instance within the time budget. At least one slice of the
+     * search is always run, so a slice that is running when the budget runs
+     * out is allowed to finish.
+     *
+     * @param instance The name of the TSPLIB file.
+     * @return The result as one line of JSON.
+     */
+    private String solve(String instance) {
+        try {
+            long start = System.nanoTime();
+            String[] cityData = Homework12.parseTSPLIBFile(instance);
+            long parsed = System.nanoTime();
+
+            TSPSolver solver = this.solvers.get();
+            solver.resize(cityData.length);
+            solver.precomputeDistances(cityData);
+
+            long deadline = parsed + this.millisecondsPerJob * 1000000;
+            int[] best = null;
+            int bestCost = Integer.MAX_VALUE;
+            if (this.geneticAlgorithm) {
+                solver.generateInitialPopulation();
+                for (int i = 0; i < GA_GENERATIONS; i += GA_SLICE_GENERATIONS) {
+                    solver.evolve(GA_SLICE_GENERATIONS);
+                    if (System.nanoTime() >= deadline) {
+                        break;
+                    }
+                }
+                best = solver.getBestMember();
+                bestCost = (int) solver.memberFitness(best, true);
+            }
+            else {
+                for (int i = 0; i < VBSS_SAMPLES; i += VBSS_SLICE_SAMPLES) {
+                    solver.VBSS(VBSS_SLICE_SAMPLES, 7);
+                    int cost = (int) solver.memberFitness(solver.getBestMember(), true);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = solver.getBestMember();
+                    }
+                    if (System.nanoTime() >= deadline) {
+                        break;
+                    }
+                }
+            }
+            long solved = System.nanoTime();
+
+            StringBuilder line = new StringBuilder();
+            line.append("{\"file\":").append(quote(instance));
+            line.append(",\"cities\":").append(cityData.length);
+            line.append(",\"cost\":").append(bestCost);
+            line.append(",\"parseMillis\":").append((parsed - start) / 1000000);
+            line.append(",\"solveMillis\":").append((solved - parsed) / 1000000);
+            line.append(",\"tour\":[");
+            for (int i = 0; i < best.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(best[i] + 1);
+            }
+            return line.append("]}").toString();
+        }
+        catch (Throwable e) {
+            /*
+             * Errors such as an OutOfMemoryError on one huge instance are
+             * reported like any other failure rather than aborting the batch.
+             * The solver of this thread may have been left half resized, so it
+             * is dropped and the next job on this thread gets a new one.
+             */
+            this.solvers.remove();
+            return "{\"file\":" + quote(instance) + ",\"error\":" + quote(
+                    String.valueOf(e)) + "}";
+        }
+    }
+
+    /**
+     * Writes a line to the output file and flushes it, so that results can be
+     * read while the batch is still running.
+     */
+    private synchronized void write(String line) throws IOException {
+        this.output.write(line);
+        this.output.newLine();
+        this.output.flush();
+    }
+
+    /**
+     * Quotes a string as a JSON string literal.
+     */
+    private static String quote(String x) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : x.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,523 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * A class that attempts to minimize the cost of very large TSP instances by
+ * divide and conquer. The cities are partitioned spatially into small
+ * clusters, the subtour of each cluster is solved in parallel by its own small
+ * TSPSolver (using either VBSS or the genetic algorithm), and the subtours are
+ * then stitched together in the order in which a Hilbert curve visits the
+ * cluster centroids, with a local 2-opt pass over the cities around each
+ * seam.
+ *
+ * Unlike TSPSolver, this class never builds a distance matrix over all of the
+ * cities, so memory use is linear in the number of cities and the time taken
+ * is close to linear as well.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class ClusterSolver {
+
+    /*
+     * The number of cells along each side of the grid on which the Hilbert
+     * curve that orders the clusters is drawn; a power of two.
+     */
+    private static final int HILBERT_SIDE = 1 << 16;
+
+    /*
+     * The number of cities on each side of a seam between two subtours that
+     * the 2-opt pass after stitching tries to reorder.
+     */
+    private static final int SEAM_WINDOW = 10;
+
+    /*
+     * The pre-processed lines of the TSPLIB file, one per city.
+     */
+    private String[] cityData;
+
+    private double[] xCoordinates;
+
+    private double[] yCoordinates;
+
+    /*
+     * The largest number of cities that is allowed in a single cluster.
+     */
+    private int clusterSize;
+
+    /*
+     * The tour found by the most recent solve, given as indexes into cityData.
+     */
+    private int[] tour;
+
+    public ClusterSolver(String[] cityData, int clusterSize) {
+        this.cityData = cityData;
+        this.clusterSize = Math.max(clusterSize, 1);
+        this.xCoordinates = new double[cityData.length];
+        this.yCoordinates = new double[cityData.length];
+        for (int i = 0; i < cityData.length; i++) {
+            String[] fields = cityData[i].split("[\\s+]");
+            this.xCoordinates[i] = Double.valueOf(fields[1]);
+            this.yCoordinates[i] = Double.valueOf(fields[2]);
+        }
+    }
+
+    /**
+     * Solves the subtour of every cluster with VBSS.
+     *
+     * @param samples The number of samples of VBSS to run on each cluster.
+     * @param b The parameter "B" in the VBSS formula.
+     * @throws Exception If solving one of the clusters fails.
+     */
+    public void solveWithVBSS(int samples, double b) throws Exception {
+        this.solve(subData -> {
+            TSPSolver solver = new TSPSolver(subData.length);
+            solver.precomputeDistances(subData);
+            solver.VBSS(samples, b);
+            return solver.getBestMember();
+        });
+    }
+
+    /**
+     * Solves the subtour of every cluster with the genetic algorithm.
+     *
+     * @param populationSize The population size used on each cluster.
+     * @param numberOfGenerations The number of generations used on each
+     * cluster.
+     * @throws Exception If solving one of the clusters fails.
+     */
+    public void solveWithGA(int populationSize, int numberOfGenerations) throws Exception {
+        this.solve(subData -> {
+            TSPSolver solver = new TSPSolver(populationSize, subData.length,
+                    numberOfGenerations);
+            solver.precomputeDistances(subData);
+            solver.generateInitialPopulation();
+            solver.evolve();
+            return solver.getBestMember();
+        });
+    }
+
+    /**
+     * Partitions the cities, solves every cluster in parallel with the given
+     * engine, and stitches the resulting subtours into a single tour.
+     *
+     * @param engine Maps the TSPLIB lines of a cluster to a tour of that
+     * cluster, where the tour is given as indexes into the lines.
+     * @throws Exception If solving one of the clusters fails.
+     */
+    private void solve(Function<String[], int[]> engine) throws Exception {
+        int[] allCities = new int[this.cityData.length];
+        for (int i = 0; i < allCities.length; i++) {
+            allCities[i] = i;
+        }
+        List<int[]> clusters = new ArrayList<>();
+        this.partition(allCities, 0, allCities.length, clusters);
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<int[]>> subtours = new ArrayList<>();
+            for (int[] cluster : clusters) {
+                subtours.add(executor.submit(() -> this.solveCluster(cluster,
+                        engine)));
+            }
+            int[] clusterOrder = this.clusterTour(clusters);
+            for (int i = 0; i < clusters.size(); i++) {
+                clusters.set(i, subtours.get(i).get());
+            }
+            this.tour = this.stitch(clusters, clusterOrder);
+        }
+        catch (Throwable e) {
+            /*
+             * Once one cluster has failed the tour cannot be completed, so the
+             * clusters still waiting to be solved are dropped rather than
+             * solved for nothing.
+             */
+            executor.shutdownNow();
+            throw e;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Solves a single cluster. Clusters of three or fewer cities are returned
+     * as they are, since every ordering of them is an optimal tour.
+     *
+     * @param cluster The cities in the cluster.
+     * @param engine The engine used to solve the cluster.
+     * @return The cities of the cluster in tour order.
+     */
+    private int[] solveCluster(int[] cluster, Function<String[], int[]> engine) {
+        if (cluster.length <= 3) {
+            return cluster;
+        }
+        String[] subData = new String[cluster.length];
+        for (int i = 0; i < cluster.length; i++) {
+            subData[i] = this.cityData[cluster[i]];
+        }
+        int[] subtour = engine.apply(subData);
+        if (!isPermutation(subtour, cluster.length)) {
+            throw new IllegalStateException("The tour of a cluster does not visit each of its "
+                    + cluster.length + " cities once");
+        }
+        int[] result = new int[cluster.length];
+        for (int i = 0; i < subtour.length; i++) {
+            result[i] = cluster[subtour[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Checks that a tour visits each of the cities 0, 1, ..., (size - 1) once.
+     *
+     * @param tour The tour to check.
+     * @param size The number of cities.
+     * @return true if the tour is a permutation of the cities.
+     */
+    private static boolean isPermutation(int[] tour, int size) {
+        if (tour.length != size) {
+            return false;
+        }
+        boolean[] visited = new boolean[size];
+        for (int city : tour) {
+            if (city < 0 || city >= size || visited[city]) {
+                return false;
+            }
+            visited[city] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Recursively bisects cities[from, to) at the median of the longer side of
+     * its bounding box until every part holds at most this.clusterSize cities.
+     * This is an adaptive grid: unlike a fixed grid it keeps the clusters the
+     * same size even when the cities are unevenly spread.
+     *
+     * @param cities The cities being partitioned. The array is reordered.
+     * @param from The first index of the part to partition.
+     * @param to One past the last index of the part to partition.
+     * @param clusters The list to which the finished clusters are added.
+     */
+    private void partition(int[] cities, int from, int to, List<int[]> clusters) {
+        if (to - from <= this.clusterSize) {
+            int[] cluster = new int[to - from];
+            System.arraycopy(cities, from, cluster, 0, cluster.length);
+            clusters.add(cluster);
+            return;
+        }
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            minX = Math.min(minX, this.xCoordinates[cities[i]]);
+            maxX = Math.max(maxX, this.xCoordinates[cities[i]]);
+            minY = Math.min(minY, this.yCoordinates[cities[i]]);
+            maxY = Math.max(maxY, this.yCoordinates[cities[i]]);
+        }
+        double[] axis = maxX - minX >= maxY - minY ? this.xCoordinates : this.yCoordinates;
+        int middle = (from + to) >>> 1;
+        this.select(cities, from, to - 1, middle, axis);
+        this.partition(cities, from, middle, clusters);
+        this.partition(cities, middle, to, clusters);
+    }
+
+    /**
+     * Reorders cities[left, right] so that the city at index k is the one that
+     * would be there if the range were sorted by the given coordinate, with no
+     * larger coordinate before it and no smaller one after it (quickselect).
+     */
+    private void select(int[] cities, int left, int right, int k, double[] axis) {
+        while (left < right) {
+            double pivot = axis[cities[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[cities[i]] < pivot) {
+                    i++;
+                }
+                while (axis[cities[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = cities[i];
+                    cities[i] = cities[j];
+                    cities[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            }
+            else if (k >= i) {
+                left = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the order in which the clusters are visited by sorting their
+     * centroids along a Hilbert curve. The curve keeps centroids that are close
+     * to each other close in the order, and sorting takes O(k log k) time and
+     * O(k) memory for k clusters, unlike solving a TSP instance over the
+     * centroids.
+     *
+     * @param clusters The clusters to order.
+     * @return The indexes of the clusters in the order they are visited.
+     */
+    private int[] clusterTour(List<int[]> clusters) {
+        int k = clusters.size();
+        double[] x = new double[k];
+        double[] y = new double[k];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < k; i++) {
+            x[i] = this.centroidX(clusters.get(i));
+            y[i] = this.centroidY(clusters.get(i));
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        /*
+         * The grid is square, so that distances along both axes are scaled
+         * alike. Each key holds the position on the curve in its high 32 bits
+         * and the index of the cluster in its low 32 bits.
+         */
+        double span = Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_VALUE);
+        long[] keys = new long[k];
+        for (int i = 0; i < k; i++) {
+            int cellX = (int) ((x[i] - minX) / span * (HILBERT_SIDE - 1));
+            int cellY = (int) ((y[i] - minY) / span * (HILBERT_SIDE - 1));
+            keys[i] = hilbertIndex(cellX, cellY) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Computes the distance along a Hilbert curve that fills a grid of
+     * HILBERT_SIDE by HILBERT_SIDE cells to the given cell.
+     *
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     * @return The number of cells the curve passes before reaching the cell.
+     */
+    private static long hilbertIndex(int x, int y) {
+        long index = 0;
+        for (int s = HILBERT_SIDE / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            /*
+             * Rotates the quadrant so that the curve inside it runs in the
+             * standard direction.
+             */
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIDE - 1 - x;
+                    y = HILBERT_SIDE - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Joins the subtours into one tour. Each cyclic subtour is opened at the
+     * edge whose removal, together with the edge entering from the previous
+     * cluster and the edge leaving towards the centroid of the next cluster,
+     * costs the least, in time linear in the size of each cluster. Since the
+     * city that is actually entered next is only known once the next subtour
+     * has been opened, every seam is then repaired with repairSeam.
+     *
+     * @param subtours The solved subtour of every cluster.
+     * @param clusterOrder The order in which the clusters are visited.
+     * @return The complete tour.
+     */
+    private int[] stitch(List<int[]> subtours, int[] clusterOrder) {
+        int[] result = new int[this.cityData.length];
+        double previousX = this.centroidX(subtours.get(clusterOrder[clusterOrder.length - 1]));
+        double previousY = this.centroidY(subtours.get(clusterOrder[clusterOrder.length - 1]));
+        int position = 0;
+        int[] seams = new int[clusterOrder.length];
+
+        for (int c = 0; c < clusterOrder.length; c++) {
+            seams[c] = position;
+            int[] subtour = subtours.get(clusterOrder[c]);
+            int[] next = subtours.get(clusterOrder[(c + 1) % clusterOrder.length]);
+            double nextX = this.centroidX(next);
+            double nextY = this.centroidY(next);
+            int m = subtour.length;
+
+            int bestCut = 0;
+            boolean bestForward = true;
+            double bestCost = Double.MAX_VALUE;
+            for (int j = 0; j < m; j++) {
+                int a = subtour[j];
+                int b = subtour[(j + 1) % m];
+                double removed = this.distance(this.xCoordinates[a],
+                        this.yCoordinates[a], this.xCoordinates[b],
+                        this.yCoordinates[b]);
+
+                /*
+                 * Either enter at b and walk forwards to a, or enter at a and
+                 * walk backwards to b.
+                 */
+                double forward = this.distance(previousX, previousY,
+                        this.xCoordinates[b], this.yCoordinates[b])
+                        + this.distance(this.xCoordinates[a],
+                                this.yCoordinates[a], nextX, nextY) - removed;
+                double backward = this.distance(previousX, previousY,
+                        this.xCoordinates[a], this.yCoordinates[a])
+                        + this.distance(this.xCoordinates[b],
+                                this.yCoordinates[b], nextX, nextY) - removed;
+                if (forward < bestCost) {
+                    bestCost = forward;
+                    bestCut = j;
+                    bestForward = true;
+                }
+                if (backward < bestCost) {
+                    bestCost = backward;
+                    bestCut = j;
+                    bestForward = false;
+                }
+            }
+
+            for (int k = 0; k < m; k++) {
+                result[position++] = bestForward
+                        ? subtour[(bestCut + 1 + k) % m]
+                        : subtour[((bestCut - k) % m + m) % m];
+            }
+            previousX = this.xCoordinates[result[position - 1]];
+            previousY = this.yCoordinates[result[position - 1]];
+        }
+        for (int seam : seams) {
+            this.repairSeam(result, seam);
+        }
+        return result;
+    }
+
+    /**
+     * Applies improving 2-opt moves to the SEAM_WINDOW cities on either side
+     * of a seam between two subtours until there are none left. Only edges
+     * inside the window are exchanged, so the rest of the tour is unchanged,
+     * and the distances are computed from the coordinates as needed.
+     *
+     * @param tour The complete tour, which is changed in place.
+     * @param seam The index of the first city of a subtour.
+     */
+    private void repairSeam(int[] tour, int seam) {
+        int n = tour.length;
+        int window = Math.min(SEAM_WINDOW, (n - 2) / 2);
+        if (window < 2) {
+            return;
+        }
+        int from = seam - window + n;
+        int size = 2 * window;
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < size - 2; i++) {
+                for (int j = i + 2; j < size; j++) {
+                    int a = tour[(from + i) % n];
+                    int b = tour[(from + i + 1) % n];
+                    int c = tour[(from + j) % n];
+                    int d = tour[(from + j + 1) % n];
+                    int gain = this.distance(a, b) + this.distance(c, d)
+                            - this.distance(a, c) - this.distance(b, d);
+                    if (gain > 0) {
+                        for (int left = i + 1, right = j; left < right; left++, right--) {
+                            int temp = tour[(from + left) % n];
+                            tour[(from + left) % n] = tour[(from + right) % n];
+                            tour[(from + right) % n] = temp;
+                        }
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the distance between two cities, rounded as in TSPSolver.
+     */
+    private int distance(int a, int b) {
+        return (int) Math.round(this.distance(this.xCoordinates[a],
+                this.yCoordinates[a], this.xCoordinates[b], this.yCoordinates[b]));
+    }
+
+    private double centroidX(int[] cluster) {
+        double sum = 0;
+        for (int city : cluster) {
+            sum += this.xCoordinates[city];
+        }
+        return sum / cluster.length;
+    }
+
+    private double centroidY(int[] cluster) {
+        double sum = 0;
+        for (int city : cluster) {
+            sum += this.yCoordinates[city];
+        }
+        return sum / cluster.length;
+    }
+
+    private double distance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Computes the cost of the most recently found tour, using the same
+     * rounded Euclidean distances as TSPSolver.
+     *
+     * @return The cost of the tour.
+     */
+    public int tourCost() {
+        int cost = 0;
+        for (int i = 0; i < this.tour.length; i++) {
+            int a = this.tour[i];
+            int b = this.tour[(i + 1) % this.tour.length];
+            cost += this.distance(a, b);
+        }
+        return cost;
+    }
+
+    public int[] getTour() {
+        return this.tour;
+    }
+
+    /**
+     * Prints the cost of the tour found, followed by the tour itself (given as
+     * integers that each represent a city) with one city per line.
+     */
+    public void printResults() {
+        TSPSolver.printTour(this.tourCost(), this.tour);
+    }
+}
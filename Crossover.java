@@ -4,7 +4,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 
 /**
@@ -16,8 +15,6 @@ import java.util.Set;
  */
 public class Crossover {
 
-    private static Random rng = new Random();
-
     /**
      * Cycle crossover.
      *
@@ -42,7 +39,7 @@ public class Crossover {
          * A set that keeps track of which indexes are in the cycle.
          */
         Set<Integer> indexesInCycle = new HashSet<>();
-        int start = rng.nextInt(parent1.length);
+        int start = RandomSource.current().nextInt(parent1.length);
 
         while (true) {
             if (indexesInCycle.contains(start)) {
@@ -71,8 +68,8 @@ public class Crossover {
      * @param parent2 The other permutation to be used in the crossover.
      */
     public static void order(int[] parent1, int[] parent2) {
-        int start = rng.nextInt(parent1.length);
-        int end = rng.nextInt(parent1.length);
+        int start = RandomSource.current().nextInt(parent1.length);
+        int end = RandomSource.current().nextInt(parent1.length);
 
         if (start > end) {
             int temp = start;
@@ -14,6 +14,25 @@ public class Homework12 {
 
         String[] cityData;
 
+        /*
+         * Solves every instance in a directory or manifest, on every core,
+         * with a time budget of 60 seconds per instance unless another number
+         * of seconds is given.
+         */
+        if (args.length > 0 && args[0].equalsIgnoreCase("batch")) {
+            if (args.length < 3) {
+                System.err.println("usage: batch <directory or manifest> <results file>"
+                        + " [seconds per instance] [GA]");
+                return;
+            }
+            int seconds = args.length > 3 ? Integer.valueOf(args[3]) : 60;
+            BatchSolver batch = new BatchSolver(
+                    Runtime.getRuntime().availableProcessors(), seconds * 1000L,
+                    args.length > 4 && args[4].equalsIgnoreCase("ga"));
+            batch.run(BatchSolver.listInstances(args[1]), args[2]);
+            return;
+        }
+
         if (args.length == 0) {
             cityData = parseTSPLIBFile("dj38.tsp");
         }
@@ -21,52 +40,165 @@ public class Homework12 {
             cityData = parseTSPLIBFile(args[0]);
 
         }
+
+        /*
+         * Very large instances are split into clusters of at most 100 cities,
+         * so that no distance matrix over all of the cities is ever built.
+         */
+        if (args.length > 1 && args[1].equalsIgnoreCase("cluster")) {
+            ClusterSolver clusterSolver = new ClusterSolver(cityData, 100);
+            if (args.length > 2 && args[2].equalsIgnoreCase("ga")) {
+                clusterSolver.solveWithGA(50, 2000);
+            }
+            else {
+                clusterSolver.solveWithVBSS(1000, 7);
+            }
+            clusterSolver.printResults();
+            return;
+        }
+
         TSPSolver solver = new TSPSolver(50, cityData.length, 25000);
         solver.precomputeDistances(cityData);
 
+        /*
+         * Races the genetic algorithm, VBSS with several values of B, and
+         * iterative sampling on every core for the given number of seconds.
+         */
+        if (args.length > 1 && args[1].equalsIgnoreCase("portfolio")) {
+            Portfolio portfolio = new Portfolio(solver, 3, 5, 7, 9);
+            int seconds = args.length > 2 ? Integer.valueOf(args[2]) : 60;
+            portfolio.run(Runtime.getRuntime().availableProcessors(),
+                    seconds * 1000L);
+            portfolio.printStatistics(System.err);
+            portfolio.printResults();
+            return;
+        }
+
+        /*
+         * A tour saved by an earlier run to start from, a checkpoint file to
+         * write (and to resume from, if it exists), and a file to save the
+         * best tour to.
+         */
+        String tourFile = optionValue(args, "-tour");
+        int[] warmStart = tourFile == null ? null : TourFile.read(tourFile);
+        String checkpointFile = optionValue(args, "-checkpoint");
+        String saveFile = optionValue(args, "-save");
+
         if (args.length > 1 && args[1].equalsIgnoreCase("ga")) {
 
-            solver.generateInitialPopulation();
+            solver.useTranspositionTable(1 << 16);
+            solver.useAdaptiveOperators();
+            if (checkpointFile != null) {
+                solver.enableCheckpoints(checkpointFile, 1000);
+            }
+            if (checkpointFile != null && new File(checkpointFile).exists()) {
+                solver.resume(checkpointFile);
+            }
+            else {
+                solver.generateInitialPopulation();
+            }
+            if (warmStart != null) {
+                solver.seed(warmStart);
+            }
             solver.evolve();
+            solver.printOperatorStatistics(System.err);
 
         }
+        /*
+         * The steady-state genetic algorithm produces as many children, on
+         * every core, as the generational one does in 25,000 generations.
+         */
+        else if (args.length > 1 && args[1].equalsIgnoreCase("steady")) {
+            SteadyStateGA steadyState = new SteadyStateGA(solver, 50);
+            if (warmStart != null) {
+                steadyState.seed(warmStart);
+            }
+            steadyState.run(Runtime.getRuntime().availableProcessors(),
+                    50L * 25000);
+            steadyState.printStatistics(System.err);
+            solver.warmStart(steadyState.getBestMember());
+        }
         else {
+            if (warmStart != null) {
+                solver.warmStart(warmStart);
+            }
             solver.VBSS(10000, 7);
         }
+        if (optionPresent(args, "-oropt")) {
+            solver.improveBestMember();
+        }
         solver.printResults();
+        if (saveFile != null) {
+            solver.writeTour(saveFile, args[0]);
+        }
+    }
+
+    /**
+     * Checks whether a command line option such as "-oropt" is given.
+     *
+     * @param args The command line arguments.
+     * @param option The name of the option.
+     * @return true if the option is given.
+     */
+    public static boolean optionPresent(String[] args, String option) {
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the value of a command line option such as "-tour file.tour".
+     *
+     * @param args The command line arguments.
+     * @param option The name of the option.
+     * @return The argument following the option, or null if the option is not
+     * given.
+     */
+    public static String optionValue(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equalsIgnoreCase(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
     }
 
     public static String[] parseTSPLIBFile(String fileName) throws Exception {
-        Scanner reader = new Scanner(new File(fileName));
         int size = 0;
 
         /*
          * Extract the dimension of the TSP instance, i.e. the number of cities
          * in a tour of this TSP instance.
          */
-        while (reader.hasNextLine()) {
-            String line = reader.nextLine();
-            while (!line.startsWith("DIMENSION")) {
-                line = reader.nextLine();
-
+        try (Scanner reader = new Scanner(new File(fileName))) {
+            while (reader.hasNextLine()) {
+                String line = reader.nextLine();
+                while (!line.startsWith("DIMENSION")) {
+                    line = reader.nextLine();
+
+                }
+                size = Integer.valueOf(line.split(":")[1].strip());
+                break;
             }
-            size = Integer.valueOf(line.split(":")[1].strip());
-            break;
         }
 
         String[] cityCoordinates = new String[size];
 
-        reader = new Scanner(new File(fileName));
-        while (reader.hasNextLine()) {
-            String line = reader.nextLine();
-            while (!isInteger(line.split("[\\s+]")[0])) {
-                line = reader.nextLine();
-            }
-            cityCoordinates[0] = line;
-            for (int i = 1; i < size; i++) {
-                cityCoordinates[i] = reader.nextLine();
+        try (Scanner reader = new Scanner(new File(fileName))) {
+            while (reader.hasNextLine()) {
+                String line = reader.nextLine();
+                while (!isInteger(line.split("[\\s+]")[0])) {
+                    line = reader.nextLine();
+                }
+                cityCoordinates[0] = line;
+                for (int i = 1; i < size; i++) {
+                    cityCoordinates[i] = reader.nextLine();
+                }
+                break;
             }
-            break;
         }
         return cityCoordinates;
     }
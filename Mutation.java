@@ -1,4 +1,5 @@
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -11,8 +12,6 @@ import java.util.Random;
  */
 public class Mutation {
 
-    private static Random rng = new Random();
-
     /**
      * Chooses two random indexes in the given permutation and swaps the
      * elements at those indexes.
@@ -20,8 +19,8 @@ public class Mutation {
      * @param permutation The permutation to mutate.
      */
     public static void swap(int[] permutation) {
-        int i = rng.nextInt(0, permutation.length);
-        int j = rng.nextInt(0, permutation.length);
+        int i = RandomSource.current().nextInt(0, permutation.length);
+        int j = RandomSource.current().nextInt(0, permutation.length);
 
         int temp = permutation[i];
         permutation[i] = permutation[j];
@@ -35,37 +34,39 @@ public class Mutation {
      * @param permutation The permutation to mutate.
      */
     public static void insertion(int[] permutation) {
-        int index = rng.nextInt(0, permutation.length);
-        int insertionIndex = rng.nextInt(0, permutation.length);
+        int index = RandomSource.current().nextInt(0, permutation.length);
+        int insertionIndex = RandomSource.current().nextInt(0, permutation.length);
         int temp = permutation[index];
 
         /*
          * In this case elements need to be shifted to the left.
          */
         if (index < insertionIndex) {
-            for (int i = index + 1; i <= insertionIndex; i++) {
-                permutation[i - 1] = permutation[i];
-            }
+            System.arraycopy(permutation, index + 1, permutation, index,
+                    insertionIndex - index);
         }
         /*
          * In this case elements need to be shifted to the right.
          */
         else if (index > insertionIndex) {
-            for (int i = index - 1; i >= insertionIndex; i--) {
-                permutation[i + 1] = permutation[i];
-            }
+            System.arraycopy(permutation, insertionIndex, permutation,
+                    insertionIndex + 1, index - insertionIndex);
         }
         permutation[insertionIndex] = temp;
     }
 
     /**
-     * Reverses a continuous sub-array of elements in the permutation.
+     * Reverses a continuous sub-array of elements in the permutation. This
+     * replaces only the two edges at the ends of the sub-array, so the change
+     * to the hash of the tour is returned, and the caller can update a hash it
+     * keeps in constant time (see TourHash).
      *
      * @param permutation The permutation to mutate.
+     * @return The exclusive or of the keys of the edges removed and added.
      */
-    public static void reverse(int[] permutation) {
-        int start = rng.nextInt(0, permutation.length);
-        int stop = rng.nextInt(0, permutation.length);
+    public static long reverse(int[] permutation) {
+        int start = RandomSource.current().nextInt(0, permutation.length);
+        int stop = RandomSource.current().nextInt(0, permutation.length);
 
         /*
          * Start needs to be smaller than stop for the following manipulations
@@ -77,6 +78,21 @@ public class Mutation {
             start = temp;
         }
 
+        /*
+         * Reversing the whole permutation gives the same tour, and has no
+         * edges at the ends of the sub-array.
+         */
+        int n = permutation.length;
+        long hashChange = 0;
+        if (stop - start < n - 1) {
+            int previous = permutation[(start - 1 + n) % n];
+            int next = permutation[(stop + 1) % n];
+            hashChange = TourHash.edgeKey(previous, permutation[start])
+                    ^ TourHash.edgeKey(permutation[stop], next)
+                    ^ TourHash.edgeKey(previous, permutation[stop])
+                    ^ TourHash.edgeKey(permutation[start], next);
+        }
+
         /*
          * Swap the element at index start with the element at index stop,
          * increase start, decrease stop, and work your way towards the middle
@@ -89,6 +105,7 @@ public class Mutation {
             start++;
             stop--;
         }
+        return hashChange;
     }
 
     /**
@@ -99,8 +116,8 @@ public class Mutation {
      * @param permutation The permutation to mutate.
      */
     public static void blockMove(int[] permutation) {
-        int start = rng.nextInt(0, permutation.length);
-        int stop = rng.nextInt(0, permutation.length);
+        int start = RandomSource.current().nextInt(0, permutation.length);
+        int stop = RandomSource.current().nextInt(0, permutation.length);
 
         if (start > stop) {
             int temp = stop;
@@ -108,35 +125,30 @@ public class Mutation {
             start = temp;
         }
 
-        int insertionIndex = rng.nextInt(0, permutation.length);
+        int insertionIndex = RandomSource.current().nextInt(0, permutation.length);
 
         /*
-         * Move each element within the block the appropriate number of places
-         * to the right, starting with the rightmost element in the block.
+         * Save the block, shift the elements between the block and the
+         * insertion index over by the length of the block, and copy the block
+         * back in at its new place. Each element is moved once, rather than
+         * once for every place it moves.
          */
+        if (insertionIndex >= start && insertionIndex <= stop) {
+            return;
+        }
+        int[] block = Arrays.copyOfRange(permutation, start, stop + 1);
         if (insertionIndex > stop) {
             int positionsToMove = insertionIndex - stop;
-            for (int i = stop; i >= start; i--) {
-                for (int j = 0; j < positionsToMove; j++) {
-                    int temp = permutation[i + j];
-                    permutation[i + j] = permutation[i + j + 1];
-                    permutation[i + j + 1] = temp;
-                }
-            }
+            System.arraycopy(permutation, stop + 1, permutation, start,
+                    positionsToMove);
+            System.arraycopy(block, 0, permutation, start + positionsToMove,
+                    block.length);
         }
-        /*
-         * Move each element within the block the appropriate number of places
-         * to the left, starting with the lefttmost element in the block.
-         */
-        else if (insertionIndex < start) {
-            int positionToMove = start - insertionIndex;
-            for (int i = start; i <= stop; i++) {
-                for (int j = 0; j < positionToMove; j++) {
-                    int temp = permutation[i - j];
-                    permutation[i - j] = permutation[i - j - 1];
-                    permutation[i - j - 1] = temp;
-                }
-            }
+        else {
+            System.arraycopy(permutation, insertionIndex, permutation,
+                    insertionIndex + block.length, start - insertionIndex);
+            System.arraycopy(block, 0, permutation, insertionIndex,
+                    block.length);
         }
     }
 
@@ -146,8 +158,9 @@ public class Mutation {
      * @param permutation The permutation to mutate.
      */
     public static void scramble(int[] permutation) {
-        int start = rng.nextInt(permutation.length);
-        int stop = rng.nextInt(permutation.length);
+        Random random = RandomSource.current();
+        int start = random.nextInt(permutation.length);
+        int stop = random.nextInt(permutation.length);
 
         if (start > stop) {
             int temp = start;
@@ -156,7 +169,7 @@ public class Mutation {
         }
 
         for (int i = start; i < stop; i++) {
-            int randomIndex = rng.nextInt(i, stop + 1);
+            int randomIndex = random.nextInt(i, stop + 1);
             int temp = permutation[i];
             permutation[i] = permutation[randomIndex];
             permutation[randomIndex] = temp;
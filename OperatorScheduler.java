@@ -0,0 +1,145 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class that chooses between several operators (for example the mutation
+ * operators of the Mutation class) while a genetic algorithm runs, favouring
+ * the operators that have recently paid off fastest. It implements adaptive
+ * pursuit, a multi-armed bandit method: the reward of an application of an
+ * operator is the reduction in tour cost it achieved per nanosecond that it
+ * took, each operator keeps a recency-weighted average of its rewards, and
+ * the selection probability of the operator with the best average is pushed
+ * towards a maximum while all the others are pushed towards a minimum. The
+ * minimum keeps every operator in use, so that an operator that becomes useful
+ * later in the run can still be noticed.
+ *
+ * @param <T> The type of the operators, e.g. ToIntFunction&lt;int[]&gt; for
+ * mutation operators, which return the reduction in the cost of the tour they
+ * mutate.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class OperatorScheduler<T> {
+
+    /*
+     * How quickly the average reward of an operator follows new rewards.
+     */
+    private static final double ALPHA = .1;
+
+    /*
+     * How quickly the selection probabilities follow the average rewards.
+     */
+    private static final double BETA = .1;
+
+    /*
+     * The minimum selection probability is this fraction of 1 / (number of
+     * operators).
+     */
+    private static final double MINIMUM_SHARE = .5;
+
+    private List<String> names = new ArrayList<>();
+
+    private List<T> operators = new ArrayList<>();
+
+    private double[] averageRewards = new double[0];
+
+    private double[] probabilities = new double[0];
+
+    private long[] uses = new long[0];
+
+    private long[] improvements = new long[0];
+
+    private long[] nanoseconds = new long[0];
+
+    /**
+     * Adds an operator. All of the operators are given the same selection
+     * probability when one is added.
+     *
+     * @param name The name of the operator, used when reporting statistics.
+     * @param operator The operator.
+     */
+    public void add(String name, T operator) {
+        this.names.add(name);
+        this.operators.add(operator);
+        int size = this.operators.size();
+        this.averageRewards = Arrays.copyOf(this.averageRewards, size);
+        this.uses = Arrays.copyOf(this.uses, size);
+        this.improvements = Arrays.copyOf(this.improvements, size);
+        this.nanoseconds = Arrays.copyOf(this.nanoseconds, size);
+        this.probabilities = new double[size];
+        Arrays.fill(this.probabilities, 1.0 / size);
+    }
+
+    /**
+     * Chooses an operator at random according to the selection probabilities.
+     *
+     * @return The index of the chosen operator.
+     */
+    public int select() {
+        double randomNumber = RandomSource.current().nextDouble();
+        for (int i = 0; i < this.probabilities.length - 1; i++) {
+            randomNumber -= this.probabilities[i];
+            if (randomNumber < 0) {
+                return i;
+            }
+        }
+        return this.probabilities.length - 1;
+    }
+
+    public T get(int index) {
+        return this.operators.get(index);
+    }
+
+    /**
+     * Records the outcome of an application of an operator and updates the
+     * selection probabilities.
+     *
+     * @param index The index of the operator that was applied.
+     * @param improvement The reduction in tour cost; negative if the cost went
+     * up.
+     * @param nanoseconds The time that the application took.
+     */
+    public void reward(int index, int improvement, long nanoseconds) {
+        this.uses[index]++;
+        this.improvements[index] += improvement;
+        this.nanoseconds[index] += nanoseconds;
+
+        double reward = Math.max(improvement, 0) / (double) Math.max(nanoseconds, 1);
+        this.averageRewards[index] += ALPHA * (reward - this.averageRewards[index]);
+
+        int best = 0;
+        for (int i = 1; i < this.averageRewards.length; i++) {
+            if (this.averageRewards[i] > this.averageRewards[best]) {
+                best = i;
+            }
+        }
+        double minimum = MINIMUM_SHARE / this.probabilities.length;
+        double maximum = 1 - (this.probabilities.length - 1) * minimum;
+        for (int i = 0; i < this.probabilities.length; i++) {
+            double target = i == best ? maximum : minimum;
+            this.probabilities[i] += BETA * (target - this.probabilities[i]);
+        }
+    }
+
+    /**
+     * Prints, for every operator, how often it was used, its final selection
+     * probability, the total reduction in tour cost it achieved, and that
+     * reduction per millisecond of time spent in it.
+     *
+     * @param out The stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        out.printf("%-12s %10s %12s %14s %14s%n", "operator", "uses",
+                "probability", "improvement", "per ms");
+        for (int i = 0; i < this.operators.size(); i++) {
+            double perMillisecond = this.nanoseconds[i] == 0 ? 0
+                    : this.improvements[i] * 1e6 / this.nanoseconds[i];
+            out.printf("%-12s %10d %12.3f %14d %14.3f%n", this.names.get(i),
+                    this.uses[i], this.probabilities[i], this.improvements[i],
+                    perMillisecond);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * A class that implements Or-opt, a local search for the Traveling
+ * Salesperson Problem that moves a segment of one, two, or three consecutive
+ * cities to another place in the tour, possibly reversing it.
+ *
+ * Only the places next to one of the nearest neighbors of the first or last
+ * city of the segment are tried, so each segment is evaluated in time that
+ * does not depend on the number of cities: the change in tour cost of a move
+ * is worked out from the three edges it removes and the three edges it adds,
+ * without evaluating the whole tour again. A move is applied by shifting the
+ * cities between the old and the new place of the segment with
+ * System.arraycopy.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class OrOpt {
+
+    private static final int MAXIMUM_SEGMENT_LENGTH = 3;
+
+    private int[][] distancesBetweenCities;
+
+    /*
+     * neighbors[i] holds the cities nearest to city i, nearest first.
+     */
+    private int[][] neighbors;
+
+    /*
+     * positions[c] is the index of city c in the tour last worked on. The
+     * index is kept between calls and only rebuilt when a lookup finds that
+     * the tour has been changed by something other than this object.
+     */
+    private int[] positions;
+
+    /*
+     * The exclusive or of the keys (see TourHash) of every edge removed and
+     * added by the most recent call to improve or mutate.
+     */
+    private long hashChange;
+
+    /**
+     * @param distancesBetweenCities The distance between every pair of cities.
+     * @param numberOfCities The number of cities.
+     * @param numberOfNeighbors The number of nearest neighbors of each city
+     * next to which segments are tried.
+     */
+    public OrOpt(int[][] distancesBetweenCities, int numberOfCities, int numberOfNeighbors) {
+        this.distancesBetweenCities = distancesBetweenCities;
+        this.positions = new int[numberOfCities];
+        this.neighbors = new int[numberOfCities][Math.min(numberOfNeighbors,
+                numberOfCities - 1)];
+
+        /*
+         * Keeps the nearest cities of each city with an insertion sort into a
+         * short array, which takes time proportional to the number of cities
+         * times the number of neighbors, rather than sorting all of the cities.
+         */
+        for (int i = 0; i < numberOfCities; i++) {
+            int[] nearest = this.neighbors[i];
+            int count = 0;
+            for (int j = 0; j < numberOfCities; j++) {
+                if (j == i) {
+                    continue;
+                }
+                int distance = distancesBetweenCities[i][j];
+                if (count == nearest.length
+                        && distance >= distancesBetweenCities[i][nearest[count - 1]]) {
+                    continue;
+                }
+                int k = count < nearest.length ? count++ : count - 1;
+                while (k > 0 && distancesBetweenCities[i][nearest[k - 1]] > distance) {
+                    nearest[k] = nearest[k - 1];
+                    k--;
+                }
+                nearest[k] = j;
+            }
+        }
+    }
+
+    /**
+     * Applies improving Or-opt moves to a tour until there are none left.
+     *
+     * @param tour The tour to improve.
+     * @return The reduction in the cost of the tour.
+     */
+    public int improve(int[] tour) {
+        int n = tour.length;
+        this.hashChange = 0;
+        if (n < 2 * MAXIMUM_SEGMENT_LENGTH + 2) {
+            return 0;
+        }
+        int[] move = new int[2];
+        int reduction = 0;
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < n; i++) {
+                for (int length = 1; length <= MAXIMUM_SEGMENT_LENGTH && i + length <= n; length++) {
+                    int gain = this.bestMove(tour, i, length, move);
+                    if (gain > 0) {
+                        this.apply(tour, i, length, move[0], move[1] == 1);
+                        reduction += gain;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return reduction;
+    }
+
+    /**
+     * A mutation operator for the genetic algorithm: moves a random segment of
+     * one to three cities to the best of the places next to the nearest
+     * neighbors of its end cities, even if that raises the cost of the tour.
+     * Unlike Mutation.blockMove, it runs in time linear in the distance the
+     * segment moves when the tour was last changed by this object; otherwise
+     * the index of the position of every city is rebuilt first, which takes
+     * time linear in the number of cities.
+     *
+     * @param tour The permutation to mutate.
+     * @return The reduction in the cost of the tour; negative if the cost went
+     * up.
+     */
+    public int mutate(int[] tour) {
+        int n = tour.length;
+        this.hashChange = 0;
+        if (n < 2 * MAXIMUM_SEGMENT_LENGTH + 2) {
+            return 0;
+        }
+        int length = RandomSource.current().nextInt(1, MAXIMUM_SEGMENT_LENGTH + 1);
+        int i = RandomSource.current().nextInt(0, n - length + 1);
+        int[] move = new int[2];
+        int gain = this.bestMove(tour, i, length, move);
+        if (move[0] >= 0) {
+            this.apply(tour, i, length, move[0], move[1] == 1);
+            return gain;
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the best place to move the segment tour[i, i + length) to.
+     *
+     * @param tour The tour.
+     * @param i The index of the first city of the segment.
+     * @param length The number of cities in the segment.
+     * @param move Receives the index of the city after which the segment is to
+     * be put, or -1 if there is nowhere to put it, and 1 if the segment is to
+     * be reversed or 0 if not.
+     * @return The reduction in the cost of the tour that the best move gives.
+     */
+    private int bestMove(int[] tour, int i, int length, int[] move) {
+        int n = tour.length;
+        int[][] d = this.distancesBetweenCities;
+        int first = tour[i];
+        int last = tour[i + length - 1];
+        int previous = tour[(i - 1 + n) % n];
+        int next = tour[(i + length) % n];
+        int removalGain = d[previous][first] + d[last][next] - d[previous][next];
+
+        int bestGain = Integer.MIN_VALUE;
+        move[0] = -1;
+        for (int end = 0; end < 2; end++) {
+            int[] candidates = this.neighbors[end == 0 ? first : last];
+            for (int candidate : candidates) {
+                int position = this.position(tour, candidate);
+
+                /*
+                 * Try the edge that leaves the candidate and the edge that
+                 * enters it, i.e. putting the segment after the candidate and
+                 * putting it before.
+                 */
+                for (int side = 0; side < 2; side++) {
+                    int after = side == 0 ? position : (position - 1 + n) % n;
+
+                    /*
+                     * The edge must not touch the inside of the segment, and
+                     * the edge entering the segment would give the same tour.
+                     */
+                    if (((after - i + 1 + n) % n) <= length) {
+                        continue;
+                    }
+                    int a = tour[after];
+                    int b = tour[(after + 1) % n];
+                    int forward = d[a][first] + d[last][b] - d[a][b];
+                    int reversed = d[a][last] + d[first][b] - d[a][b];
+                    int gain = removalGain - Math.min(forward, reversed);
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        move[0] = after;
+                        move[1] = reversed < forward ? 1 : 0;
+                    }
+                }
+            }
+        }
+        return bestGain;
+    }
+
+    /**
+     * Moves the segment tour[i, i + length) so that it follows the city at
+     * index after, shifting the cities in between with System.arraycopy, and
+     * adds the three edges removed and the three edges added to
+     * this.hashChange.
+     */
+    private void apply(int[] tour, int i, int length, int after, boolean reverse) {
+        int n = tour.length;
+        int first = tour[i];
+        int last = tour[i + length - 1];
+        int previous = tour[(i - 1 + n) % n];
+        int next = tour[(i + length) % n];
+        int a = tour[after];
+        int b = tour[(after + 1) % n];
+        this.hashChange ^= TourHash.edgeKey(previous, first) ^ TourHash.edgeKey(last, next)
+                ^ TourHash.edgeKey(a, b) ^ TourHash.edgeKey(previous, next)
+                ^ TourHash.edgeKey(a, reverse ? last : first)
+                ^ TourHash.edgeKey(reverse ? first : last, b);
+
+        int[] segment = new int[length];
+        for (int k = 0; k < length; k++) {
+            segment[k] = tour[reverse ? i + length - 1 - k : i + k];
+        }
+
+        int from;
+        int to;
+        if (after > i) {
+            System.arraycopy(tour, i + length, tour, i, after - i - length + 1);
+            System.arraycopy(segment, 0, tour, after - length + 1, length);
+            from = i;
+            to = after;
+        }
+        else {
+            System.arraycopy(tour, after + 1, tour, after + 1 + length, i - after - 1);
+            System.arraycopy(segment, 0, tour, after + 1, length);
+            from = after + 1;
+            to = i + length - 1;
+        }
+        for (int k = from; k <= to; k++) {
+            this.positions[tour[k]] = k;
+        }
+    }
+
+    /**
+     * @return The exclusive or of the keys of every edge that the most recent
+     * call to improve or mutate removed from or added to the tour, which
+     * updates a hash of the tour kept by the caller (see TourHash).
+     */
+    public long getHashChange() {
+        return this.hashChange;
+    }
+
+    /**
+     * Looks up the index of a city in a tour. Since the tour is a permutation,
+     * an entry of the position index is correct exactly when the tour holds
+     * the city at that index; if it does not, the tour has been changed since
+     * the index was last updated, and the index is rebuilt.
+     *
+     * @param tour The tour.
+     * @param city The city.
+     * @return The index of the city in the tour.
+     */
+    private int position(int[] tour, int city) {
+        int position = this.positions[city];
+        if (tour[position] != city) {
+            for (int i = 0; i < tour.length; i++) {
+                this.positions[tour[i]] = i;
+            }
+            position = this.positions[city];
+        }
+        return position;
+    }
+}
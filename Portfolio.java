@@ -0,0 +1,289 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A class that races several search strategies (the genetic algorithm, VBSS
+ * with several values of B, and iterative sampling) against each other on one
+ * TSP instance, using several cores and a shared time budget.
+ *
+ * Every strategy runs in short slices (a few generations or a few samples).
+ * Every strategy reports to one global incumbent, and a strategy is leading
+ * when it has recently been lowering the cost of the incumbent fastest, per
+ * second of running time. Whenever a core finishes a slice it is given to the
+ * leading strategy, apart from an occasional slice given to a random strategy,
+ * so cores move from the lagging strategies to the leading one as the race
+ * goes on. The genetic algorithm seeds its population with the incumbent
+ * whenever the incumbent is better than anything it has found itself.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class Portfolio {
+
+    private static Random rng = new Random();
+
+    /*
+     * The probability that a free core is given to a random strategy rather
+     * than to the leading one.
+     */
+    private static final double EXPLORATION_RATE = .2;
+
+    /*
+     * How quickly the score of a strategy follows the results of new slices.
+     */
+    private static final double ALPHA = .3;
+
+    private static final int GA_SLICE_GENERATIONS = 100;
+
+    private static final int VBSS_SLICE_SAMPLES = 10;
+
+    private static final int SAMPLING_SLICE_SAMPLES = 1000;
+
+    /*
+     * A solver whose distances have been computed; the solvers of all of the
+     * strategies share its distances.
+     */
+    private TSPSolver instance;
+
+    private List<Strategy> strategies = new ArrayList<>();
+
+    /*
+     * The lowest-cost tour found by any strategy, and its cost.
+     */
+    private int[] incumbent;
+
+    private int incumbentCost = Integer.MAX_VALUE;
+
+    /**
+     * A search strategy in the portfolio. A strategy can run on several cores
+     * at once, each with its own solver; solvers that are not running a slice
+     * are kept for reuse.
+     */
+    private class Strategy {
+
+        private String name;
+
+        private Supplier<TSPSolver> newSolver;
+
+        private Consumer<TSPSolver> slice;
+
+        private Queue<TSPSolver> idleSolvers = new ConcurrentLinkedQueue<>();
+
+        /*
+         * Set when the strategy is first handed to a core, so that the first
+         * slice of every strategy goes to a different core.
+         */
+        private AtomicBoolean started = new AtomicBoolean();
+
+        private volatile int bestCost = Integer.MAX_VALUE;
+
+        /*
+         * A recency-weighted average of how much each slice lowered the cost
+         * of the incumbent, per second.
+         */
+        private volatile double score;
+
+        private long slices;
+
+        private long nanoseconds;
+
+        private Strategy(String name, Supplier<TSPSolver> newSolver, Consumer<TSPSolver> slice) {
+            this.name = name;
+            this.newSolver = newSolver;
+            this.slice = slice;
+        }
+
+        /**
+         * Runs one slice of the strategy and reports its result.
+         */
+        private void runSlice() {
+            TSPSolver solver = this.idleSolvers.poll();
+            if (solver == null) {
+                solver = this.newSolver.get();
+            }
+            long start = System.nanoTime();
+            this.slice.accept(solver);
+            int[] tour = solver.getBestMember();
+            int cost = (int) solver.memberFitness(tour, true);
+            long elapsed = System.nanoTime() - start;
+
+            int gain = Portfolio.this.offer(tour, cost);
+            synchronized (this) {
+                this.slices++;
+                this.nanoseconds += elapsed;
+                if (cost < this.bestCost) {
+                    this.bestCost = cost;
+                }
+                this.score += ALPHA * (gain / (elapsed / 1e9) - this.score);
+            }
+            this.idleSolvers.add(solver);
+        }
+    }
+
+    /**
+     * @param instance A solver whose distances have already been computed.
+     * @param bValues The values of the parameter "B" with which to run VBSS,
+     * one strategy per value.
+     */
+    public Portfolio(TSPSolver instance, double... bValues) {
+        this.instance = instance;
+
+        this.strategies.add(new Strategy("ga", () -> {
+            TSPSolver solver = new TSPSolver(this.instance, 50, 0);
+            solver.useTranspositionTable(1 << 16);
+            solver.useAdaptiveOperators();
+            solver.generateInitialPopulation();
+            return solver;
+        }, solver -> {
+            int[] incumbent = this.getIncumbent();
+            if (incumbent != null && this.getIncumbentCost() < solver.memberFitness(
+                    solver.getBestMember(), true)) {
+                solver.seed(incumbent);
+            }
+            solver.evolve(GA_SLICE_GENERATIONS);
+        }));
+
+        for (double b : bValues) {
+            this.strategies.add(new Strategy("vbss b=" + b,
+                    () -> new TSPSolver(this.instance, 0, 0),
+                    solver -> solver.VBSS(VBSS_SLICE_SAMPLES, b)));
+        }
+
+        this.strategies.add(new Strategy("sampling",
+                () -> new TSPSolver(this.instance, 0, SAMPLING_SLICE_SAMPLES),
+                solver -> solver.iterativeSampling()));
+    }
+
+    /**
+     * Runs the strategies until the time budget runs out. Every core runs at
+     * least one slice, even if the budget is zero, so that there is always an
+     * incumbent; a slice that is running when the budget runs out is allowed
+     * to finish. If a slice fails, the other cores stop after their current
+     * slice and the failure is thrown.
+     *
+     * @param cores The number of strategies that run at the same time.
+     * @param milliseconds The time budget.
+     * @throws InterruptedException If interrupted while waiting for the cores
+     * to finish.
+     * @throws ExecutionException If a slice threw an exception; its cause is
+     * that exception.
+     */
+    public void run(int cores, long milliseconds) throws InterruptedException,
+            ExecutionException {
+        long deadline = System.nanoTime() + milliseconds * 1000000;
+        AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(cores);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < cores; i++) {
+                workers.add(executor.submit(() -> {
+                    try {
+                        do {
+                            this.nextStrategy().runSlice();
+                        } while (System.nanoTime() < deadline && !failed.get());
+                    }
+                    catch (RuntimeException | Error e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Chooses the strategy that a free core runs next. Strategies that have
+     * not been handed to a core yet go first, so that every strategy gets a
+     * chance; after that the leading strategy is chosen, except with
+     * probability EXPLORATION_RATE, or when no strategy has lowered the cost
+     * of the incumbent lately, when a random strategy is chosen.
+     *
+     * @return The strategy to run next.
+     */
+    private Strategy nextStrategy() {
+        Strategy leader = null;
+        for (Strategy strategy : this.strategies) {
+            if (strategy.started.compareAndSet(false, true)) {
+                return strategy;
+            }
+            if (leader == null || strategy.score > leader.score) {
+                leader = strategy;
+            }
+        }
+        if (leader.score == 0 || rng.nextDouble() < EXPLORATION_RATE) {
+            return this.strategies.get(rng.nextInt(this.strategies.size()));
+        }
+        return leader;
+    }
+
+    /**
+     * Replaces the incumbent if the given tour has a lower cost.
+     *
+     * @param tour The tour found by a strategy.
+     * @param cost The cost of the tour.
+     * @return How much lower the cost of the tour is than the cost of the old
+     * incumbent, or zero if it is not lower. The first tour offered counts as
+     * no improvement.
+     */
+    private synchronized int offer(int[] tour, int cost) {
+        if (cost >= this.incumbentCost) {
+            return 0;
+        }
+        int gain = this.incumbent == null ? 0 : this.incumbentCost - cost;
+        this.incumbentCost = cost;
+        this.incumbent = Arrays.copyOf(tour, tour.length);
+        return gain;
+    }
+
+    public synchronized int[] getIncumbent() {
+        return this.incumbent;
+    }
+
+    public synchronized int getIncumbentCost() {
+        return this.incumbentCost;
+    }
+
+    /**
+     * Prints, for every strategy, how many slices it ran, how long it ran for
+     * in total, and the lowest cost it found.
+     *
+     * @param out The stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        out.printf("%-12s %10s %12s %12s%n", "strategy", "slices", "seconds",
+                "best cost");
+        for (Strategy strategy : this.strategies) {
+            synchronized (strategy) {
+                out.printf("%-12s %10d %12.3f %12d%n", strategy.name,
+                        strategy.slices, strategy.nanoseconds / 1e9,
+                        strategy.bestCost);
+            }
+        }
+    }
+
+    /**
+     * Prints the cost of the incumbent, followed by the incumbent itself
+     * (given as integers that each represent a city) with one city per line.
+     */
+    public void printResults() {
+        TSPSolver.printTour(this.getIncumbentCost(), this.getIncumbent());
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.Random;
+
+/**
+ * The random number generator shared by TSPSolver, the mutation and
+ * crossover operators, the operator scheduler, and Or-opt. Every thread has
+ * its own generator, so that solvers that run at the same time do not contend
+ * for one, and reseeding a single generator is enough to make a solver and
+ * its operators repeat their random choices, e.g. when resuming from a
+ * checkpoint.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class RandomSource {
+
+    private static ThreadLocal<Random> rng = ThreadLocal.withInitial(Random::new);
+
+    /**
+     * @return The random number generator of the calling thread.
+     */
+    public static Random current() {
+        return rng.get();
+    }
+
+    /**
+     * Reseeds the random number generator of the calling thread.
+     *
+     * @param seed The seed.
+     */
+    public static void setSeed(long seed) {
+        rng.set(new Random(seed));
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A steady-state genetic algorithm that runs on several threads without ever
+ * making them wait for each other. Instead of replacing the whole population
+ * every generation, each thread repeatedly picks two parents by tournament
+ * selection, produces two children with crossover and mutation, evaluates
+ * them, and puts each child in place of a worse member of the shared
+ * population.
+ *
+ * Every slot of the population holds an immutable member that carries a
+ * version number, and a child replaces a member with a single compare-and-set
+ * on the slot, which only succeeds if no other thread has replaced that member
+ * in the meantime. There are no locks and no barrier between generations, so
+ * more children are evaluated per second as threads are added.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class SteadyStateGA {
+
+    private static final int TOURNAMENT_SIZE = 3;
+
+    /*
+     * How many times a thread tries to replace a member of the population
+     * whose slot is changed by another thread at the same time.
+     */
+    private static final int REPLACEMENT_ATTEMPTS = 3;
+
+    private static final double CROSSOVER_RATE = .5;
+
+    private static final double MUTATION_RATE = .5;
+
+    /*
+     * A solver whose distances have been computed; each thread evaluates
+     * children with its own solver that shares these distances.
+     */
+    private TSPSolver instance;
+
+    private AtomicReferenceArray<Member> population;
+
+    private AtomicReference<Member> best;
+
+    private AtomicLong children = new AtomicLong();
+
+    private AtomicLong replacements = new AtomicLong();
+
+    private AtomicLong conflicts = new AtomicLong();
+
+    private long nanoseconds;
+
+    /**
+     * A member of the population. Members are never changed once they are in
+     * the population; a slot is changed by putting a new member in it.
+     */
+    private static final class Member {
+
+        private final int[] tour;
+
+        private final int cost;
+
+        /*
+         * The tour hash, used to recognize children that are clones of their
+         * parents.
+         */
+        private final long hash;
+
+        /*
+         * The number of times the slot of this member has been replaced.
+         */
+        private final long version;
+
+        private Member(int[] tour, int cost, long hash, long version) {
+            this.tour = tour;
+            this.cost = cost;
+            this.hash = hash;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Constructs a random initial population.
+     *
+     * @param instance A solver whose distances have already been computed.
+     * @param populationSize The population size.
+     */
+    public SteadyStateGA(TSPSolver instance, int populationSize) {
+        this.instance = instance;
+        this.population = new AtomicReferenceArray<>(populationSize);
+        Member fittest = null;
+        for (int i = 0; i < populationSize; i++) {
+            int[] tour = instance.randomPermutation();
+            Member member = new Member(tour, (int) instance.memberFitness(tour, true),
+                    TourHash.hash(tour), 0);
+            this.population.set(i, member);
+            if (fittest == null || member.cost < fittest.cost) {
+                fittest = member;
+            }
+        }
+        this.best = new AtomicReference<>(fittest);
+    }
+
+    /**
+     * Puts a copy of a tour into the population in place of the least fit
+     * member, e.g. to start from a tour found by an earlier run. Call it
+     * before run.
+     *
+     * @param tour The tour to add to the population.
+     * @throws IllegalArgumentException If the tour does not have one entry for
+     * every city of the TSP instance.
+     */
+    public void seed(int[] tour) {
+        this.instance.checkLength(tour);
+        int leastFit = 0;
+        for (int i = 1; i < this.population.length(); i++) {
+            if (this.population.get(i).cost > this.population.get(leastFit).cost) {
+                leastFit = i;
+            }
+        }
+        int[] copy = Arrays.copyOf(tour, tour.length);
+        Member member = new Member(copy, (int) this.instance.memberFitness(copy, true),
+                TourHash.hash(copy), this.population.get(leastFit).version + 1);
+        this.population.set(leastFit, member);
+        this.best.accumulateAndGet(member, (a, b) -> b.cost < a.cost ? b : a);
+    }
+
+    /**
+     * Runs the genetic algorithm until the given number of children have been
+     * produced. If a thread fails, the other threads stop after their current
+     * children and the failure is thrown.
+     *
+     * @param threads The number of threads that produce children.
+     * @param numberOfChildren The number of children to produce in total.
+     * @throws InterruptedException If interrupted while waiting for the
+     * threads to finish.
+     * @throws ExecutionException If a thread threw an exception; its cause is
+     * that exception.
+     */
+    public void run(int threads, long numberOfChildren) throws InterruptedException,
+            ExecutionException {
+        long start = System.nanoTime();
+        AtomicLong remaining = new AtomicLong(numberOfChildren);
+        AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    try {
+                        TSPSolver evaluator = new TSPSolver(this.instance, 0, 0);
+                        while (!failed.get() && remaining.addAndGet(-2) >= 0) {
+                            this.breed(evaluator);
+                            this.children.addAndGet(2);
+                        }
+                    }
+                    catch (RuntimeException | Error e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+            this.nanoseconds += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Produces two children from two parents and tries to put each of them
+     * into the population.
+     *
+     * @param evaluator The solver used by this thread to evaluate children.
+     */
+    private void breed(TSPSolver evaluator) {
+        Random random = RandomSource.current();
+        Member parent1 = this.tournament(random);
+        Member parent2 = this.tournament(random);
+        int[] child1 = Arrays.copyOf(parent1.tour, parent1.tour.length);
+        int[] child2 = Arrays.copyOf(parent2.tour, parent2.tour.length);
+
+        if (random.nextDouble() < CROSSOVER_RATE) {
+            Crossover.cycle(child1, child2);
+        }
+        if (random.nextDouble() < MUTATION_RATE) {
+            Mutation.reverse(child1);
+        }
+        if (random.nextDouble() < MUTATION_RATE) {
+            Mutation.reverse(child2);
+        }
+
+        for (int[] tour : new int[][] {child1, child2}) {
+            Member child = new Member(tour, (int) evaluator.memberFitness(tour, true),
+                    TourHash.hash(tour), 0);
+            if (child.hash != parent1.hash && child.hash != parent2.hash) {
+                this.replace(child, random);
+            }
+        }
+    }
+
+    /**
+     * Tournament selection on the shared population.
+     *
+     * @param random The random number generator of the calling thread.
+     * @return The member with the lowest cost of TOURNAMENT_SIZE randomly
+     * chosen members.
+     */
+    private Member tournament(Random random) {
+        Member chosen = null;
+        for (int i = 0; i < TOURNAMENT_SIZE; i++) {
+            Member member = this.population.get(random.nextInt(this.population.length()));
+            if (chosen == null || member.cost < chosen.cost) {
+                chosen = member;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Puts a child in place of the least fit of a few randomly chosen members
+     * of the population, if the child has a lower cost. If another thread
+     * replaces that member first, the slot is read again and the replacement
+     * tried again, a few times at most.
+     *
+     * @param child The child to put into the population.
+     * @param random The random number generator of the calling thread.
+     */
+    private void replace(Member child, Random random) {
+        int slot = -1;
+        int worstCost = -1;
+        for (int i = 0; i < TOURNAMENT_SIZE; i++) {
+            int index = random.nextInt(this.population.length());
+            int cost = this.population.get(index).cost;
+            if (cost > worstCost) {
+                worstCost = cost;
+                slot = index;
+            }
+        }
+
+        for (int attempt = 0; attempt < REPLACEMENT_ATTEMPTS; attempt++) {
+            Member current = this.population.get(slot);
+            if (child.cost >= current.cost) {
+                return;
+            }
+            Member replacement = new Member(child.tour, child.cost, child.hash,
+                    current.version + 1);
+            if (this.population.compareAndSet(slot, current, replacement)) {
+                this.replacements.incrementAndGet();
+                this.best.accumulateAndGet(replacement,
+                        (a, b) -> b.cost < a.cost ? b : a);
+                return;
+            }
+            this.conflicts.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The lowest-cost tour found.
+     */
+    public int[] getBestMember() {
+        return this.best.get().tour;
+    }
+
+    /**
+     * Prints the number of children produced and how fast, how many of them
+     * entered the population, and how many replacements had to be retried
+     * because another thread changed the same slot first.
+     *
+     * @param out The stream to print to.
+     */
+    public void printStatistics(PrintStream out) {
+        long produced = this.children.get();
+        long versions = 0;
+        for (int i = 0; i < this.population.length(); i++) {
+            versions += this.population.get(i).version;
+        }
+        out.printf("children %d (%.0f per second), replacements %d, conflicts %d%n",
+                produced, produced / (this.nanoseconds / 1e9),
+                this.replacements.get(), this.conflicts.get());
+        out.printf("average slot version %.1f, best cost %d%n",
+                versions / (double) this.population.length(), this.best.get().cost);
+    }
+}
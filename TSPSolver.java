@@ -1,10 +1,28 @@
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 /**
  * A class that attempts to minimize the cost of a given TSP instance, using
@@ -15,7 +33,12 @@ import java.util.Set;
  */
 public class TSPSolver {
 
-    private static Random rng;
+    /*
+     * Identifies a checkpoint file ("TSPC") and the version of its layout.
+     */
+    private static final int CHECKPOINT_MAGIC = 0x54535043;
+
+    private static final int CHECKPOINT_VERSION = 1;
 
     /*
      * Holds the permutation that at any point is one with lowest-cost of all
@@ -40,11 +63,62 @@ public class TSPSolver {
      */
     private int[][] population;
 
+    /*
+     * Remembers the costs of tours that have already been evaluated, by their
+     * hashes. It is null unless useTranspositionTable has been called.
+     */
+    private TranspositionTable transpositionTable;
+
+    /*
+     * hashes[i] is the hash (see TourHash) of population[i]. It is kept only
+     * while there is a transposition table, and is null otherwise.
+     */
+    private long[] hashes;
+
+    /*
+     * Set by a mutation operator that works out how it changed the hash of the
+     * tour it mutated from the few edges it replaced; see recordHashChange.
+     */
+    private long hashChange;
+
+    private boolean hashChangeKnown;
+
+    /*
+     * Choose the mutation and crossover operators while the genetic algorithm
+     * runs. They are null until useAdaptiveOperators is called, and while they
+     * are null, reverse mutation and cycle crossover are always used.
+     * A mutation operator returns the reduction in the cost of the tour it
+     * mutates.
+     */
+    private OperatorScheduler<ToIntFunction<int[]>> mutationOperators;
+
+    private OperatorScheduler<BiConsumer<int[], int[]>> crossoverOperators;
+
+    /*
+     * The Or-opt local search, with the nearest-neighbor lists of the cities.
+     * It is built the first time it is needed; see orOpt().
+     */
+    private OrOpt orOpt;
+
+    /*
+     * The number of generations of the genetic algorithm that have been
+     * simulated so far, including those simulated before a checkpoint that the
+     * run was resumed from.
+     */
+    private int generation;
+
+    /*
+     * Where to write a checkpoint, and after how many generations. The file
+     * name is null unless enableCheckpoints has been called.
+     */
+    private String checkpointFile;
+
+    private int checkpointInterval;
+
     public TSPSolver(int numberOfCities) {
         this.numberOfCities = numberOfCities;
         this.distancesBetweenCities = new int[numberOfCities][numberOfCities];
-        this.bestMember = new int[this.numberOfCities];
-        rng = new Random();
+        this.bestMember = this.identityPermutation();
 
     }
 
@@ -55,6 +129,102 @@ public class TSPSolver {
 
     }
 
+    /**
+     * Constructs a solver for the same TSP instance as another solver. The
+     * distances between the cities are shared rather than copied, so they do
+     * not need to be computed again and several solvers can work on one large
+     * instance at the same time.
+     *
+     * @param source A solver whose distances have already been computed.
+     * @param populationSize The population size if using a genetic algorithm.
+     * @param numberOfGenerations The number of generations to simulate if
+     * using a genetic algorithm, or the number of samples if using iterative
+     * sampling.
+     */
+    public TSPSolver(TSPSolver source, int populationSize, int numberOfGenerations) {
+        this.numberOfCities = source.numberOfCities;
+        this.distancesBetweenCities = source.distancesBetweenCities;
+        this.bestMember = this.identityPermutation();
+        this.numberOfGenerations = numberOfGenerations;
+        this.population = new int[populationSize][this.numberOfCities];
+    }
+
+    /**
+     * Prepares the solver for a new TSP instance, reusing the distance matrix
+     * if it is big enough for the new instance but not more than twice as big
+     * as needed, so that solving many instances of similar sizes one after the
+     * other does not allocate a new matrix each time. The distances need to be
+     * computed again with precomputeDistances. A solver whose distances are
+     * shared with other solvers should not be resized.
+     *
+     * @param numberOfCities The number of cities in the new TSP instance.
+     */
+    public void resize(int numberOfCities) {
+        int capacity = this.distancesBetweenCities.length;
+        if (capacity < numberOfCities || capacity > 2 * numberOfCities) {
+            this.distancesBetweenCities = new int[numberOfCities][numberOfCities];
+        }
+        this.numberOfCities = numberOfCities;
+        this.bestMember = this.identityPermutation();
+        this.generation = 0;
+        if (this.population != null) {
+            this.population = new int[this.population.length][numberOfCities];
+        }
+        if (this.transpositionTable != null) {
+            this.transpositionTable.clear();
+            this.hashes = null;
+        }
+        this.orOpt = null;
+    }
+
+    /**
+     * Makes the genetic algorithm keep the hash of every member of the
+     * population (see TourHash) and remember the costs of the tours it has
+     * evaluated by their hashes, so that a member whose tour has been seen
+     * before is not evaluated again. Reverse mutation and Or-opt update the
+     * hash of the member they mutate from the edges they replace, in constant
+     * time; the other operators hash the member again. Selection also skips
+     * members that represent the same tour as a member already selected, so
+     * that clones do not take up slots in the population.
+     *
+     * @param capacity The number of tours whose costs can be remembered at
+     * once.
+     */
+    public void useTranspositionTable(int capacity) {
+        this.transpositionTable = new TranspositionTable(capacity);
+        if (this.population != null) {
+            this.rehashPopulation();
+        }
+    }
+
+    /**
+     * Makes mutation and crossover choose between all of the operators of the
+     * Mutation and Crossover classes, shifting towards the operators that
+     * reduce the tour cost fastest as the genetic algorithm runs.
+     */
+    public void useAdaptiveOperators() {
+        this.mutationOperators = new OperatorScheduler<>();
+        this.mutationOperators.add("swap", permutation -> this.evaluated(
+                Mutation::swap, permutation));
+        this.mutationOperators.add("insertion", permutation -> this.evaluated(
+                Mutation::insertion, permutation));
+        this.mutationOperators.add("reverse", permutation -> this.evaluated(
+                tour -> this.recordHashChange(Mutation.reverse(tour)), permutation));
+        this.mutationOperators.add("blockMove", permutation -> this.evaluated(
+                Mutation::blockMove, permutation));
+        this.mutationOperators.add("scramble", permutation -> this.evaluated(
+                Mutation::scramble, permutation));
+        this.mutationOperators.add("orOpt", permutation -> {
+            int reduction = this.orOpt().mutate(permutation);
+            this.recordHashChange(this.orOpt().getHashChange());
+            return reduction;
+        });
+
+        this.crossoverOperators = new OperatorScheduler<>();
+        this.crossoverOperators.add("cycle", Crossover::cycle);
+        this.crossoverOperators.add("order", Crossover::order);
+    }
+
     /**
      * Constructs a random initial population.
      */
@@ -62,17 +232,32 @@ public class TSPSolver {
         for (int i = 0; i < this.population.length; i++) {
             this.population[i] = this.randomPermutation();
         }
+        if (this.transpositionTable != null) {
+            this.rehashPopulation();
+        }
         this.bestMember = Arrays.copyOf(this.mostFit(), this.numberOfCities);
     }
 
     /**
      * The genetic algorithm. It runs selection, mutation, and crossover
-     * this.numberOfGenerations times. There are different selection, mutation,
-     * and crossover operators that can be used, but none of them gives
-     * satisfactory results.
+     * this.numberOfGenerations times, less any generations that were
+     * simulated before a checkpoint that the run was resumed from. There are
+     * different selection, mutation, and crossover operators that can be used,
+     * but none of them gives satisfactory results.
      */
     public void evolve() {
-        for (int i = 0; i < this.numberOfGenerations; i++) {
+        this.evolve(this.numberOfGenerations - this.generation);
+    }
+
+    /**
+     * Runs the genetic algorithm for the given number of generations. The
+     * population and the best member are kept between calls, so the search
+     * can be run a few generations at a time.
+     *
+     * @param generations The number of generations to simulate.
+     */
+    public void evolve(int generations) {
+        for (int i = 0; i < generations; i++) {
             this.fitnessProportionateSelection();
             this.mutation();
             this.crossover();
@@ -80,12 +265,190 @@ public class TSPSolver {
             /*
              * Keeps track of the member with the lowest cost seen.
              */
-            int[] generationBest = this.mostFit();
-            if (this.memberFitness(generationBest, true) < this.memberFitness(
-                    this.bestMember, true)) {
-                this.bestMember = Arrays.copyOf(generationBest,
+            int generationBest = this.mostFitIndex();
+            if (this.cost(generationBest) < this.memberFitness(this.bestMember, true)) {
+                this.bestMember = Arrays.copyOf(this.population[generationBest],
                         this.numberOfCities);
             }
+
+            this.generation++;
+            if (this.checkpointFile != null
+                    && this.generation % this.checkpointInterval == 0) {
+                try {
+                    this.writeCheckpoint(this.checkpointFile);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the genetic algorithm write a checkpoint every so many
+     * generations, so that a run that is stopped can be resumed.
+     *
+     * @param fileName The name of the checkpoint file.
+     * @param interval The number of generations between checkpoints.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public void enableCheckpoints(String fileName, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive, not "
+                    + interval);
+        }
+        this.checkpointFile = fileName;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Writes the state of the genetic algorithm to a file in a compact binary
+     * form: the number of generations simulated, a seed for the random number
+     * generator, the best member, and the population, with each city stored in
+     * two bytes if there are few enough cities and four bytes otherwise. The
+     * random number generator of the calling thread, which this class and the
+     * operators share (see RandomSource), is reseeded from the stored seed, so
+     * a resumed run draws the same random numbers as the original run would
+     * have. Its results can still differ: the statistics of adaptive operators
+     * are not stored, and members that share one array in the population (which
+     * happens without a transposition table) are stored, and read back, as
+     * separate copies. The file is written under a temporary name and then
+     * renamed, so a run that is killed while writing leaves the previous
+     * checkpoint intact.
+     *
+     * @param fileName The name of the checkpoint file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeCheckpoint(String fileName) throws IOException {
+        long seed = RandomSource.current().nextLong();
+        RandomSource.setSeed(seed);
+
+        Path target = Paths.get(fileName);
+        Path temporary = Paths.get(fileName + ".tmp");
+        boolean narrow = this.numberOfCities <= 1 << 16;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporary.toFile())))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(this.numberOfCities);
+            out.writeInt(this.population.length);
+            out.writeInt(this.generation);
+            out.writeLong(seed);
+            writeCities(out, this.bestMember, narrow);
+            for (int[] member : this.population) {
+                writeCities(out, member, narrow);
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores the state of the genetic algorithm from a checkpoint written by
+     * writeCheckpoint, in place of generateInitialPopulation. The TSP instance
+     * must be the one the checkpoint was written for.
+     *
+     * @param fileName The name of the checkpoint file.
+     * @throws IOException If the file cannot be read, or was written for an
+     * instance with a different number of cities.
+     */
+    public void resume(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(fileName)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException(fileName + " is not a checkpoint file");
+            }
+            int cities = in.readInt();
+            if (cities != this.numberOfCities) {
+                throw new IOException(fileName + " has " + cities
+                        + " cities, not " + this.numberOfCities);
+            }
+            this.population = new int[in.readInt()][];
+            this.generation = in.readInt();
+            RandomSource.setSeed(in.readLong());
+            boolean narrow = this.numberOfCities <= 1 << 16;
+            this.bestMember = readCities(in, this.numberOfCities, narrow);
+            for (int i = 0; i < this.population.length; i++) {
+                this.population[i] = readCities(in, this.numberOfCities, narrow);
+            }
+        }
+        if (this.transpositionTable != null) {
+            this.rehashPopulation();
+        }
+    }
+
+    private static void writeCities(DataOutputStream out, int[] member, boolean narrow) throws IOException {
+        for (int city : member) {
+            if (narrow) {
+                out.writeShort(city);
+            }
+            else {
+                out.writeInt(city);
+            }
+        }
+    }
+
+    private static int[] readCities(DataInputStream in, int length, boolean narrow) throws IOException {
+        int[] member = new int[length];
+        for (int i = 0; i < length; i++) {
+            member[i] = narrow ? in.readUnsignedShort() : in.readInt();
+        }
+        return member;
+    }
+
+    /**
+     * Makes sure that a tour from outside the solver, e.g. one read from a
+     * .tour file, is for a TSP instance with this number of cities.
+     *
+     * @param tour The tour to check.
+     * @throws IllegalArgumentException If the length of the tour is not
+     * this.numberOfCities.
+     */
+    public void checkLength(int[] tour) {
+        if (tour.length != this.numberOfCities) {
+            throw new IllegalArgumentException("The tour has " + tour.length
+                    + " cities, but the TSP instance has " + this.numberOfCities);
+        }
+    }
+
+    /**
+     * Makes a previously found tour, e.g. one read with TourFile, the best
+     * member, so that VBSS and iterative sampling only report tours that
+     * improve on it. To start the genetic algorithm from a previous tour, use
+     * seed after generateInitialPopulation instead.
+     *
+     * @param tour The previously found tour.
+     * @throws IllegalArgumentException If the tour does not have one entry for
+     * every city of this TSP instance.
+     */
+    public void warmStart(int[] tour) {
+        this.checkLength(tour);
+        this.bestMember = Arrays.copyOf(tour, this.numberOfCities);
+    }
+
+    /**
+     * Puts a copy of a permutation into the population in place of the least
+     * fit member, e.g. to share a good tour found by some other search. The
+     * best member is replaced as well if the permutation has a lower cost.
+     *
+     * @param member The permutation to add to the population.
+     * @throws IllegalArgumentException If the permutation does not have one
+     * entry for every city of this TSP instance.
+     */
+    public void seed(int[] member) {
+        this.checkLength(member);
+        int leastFit = 0;
+        for (int i = 1; i < this.population.length; i++) {
+            if (this.cost(i) > this.cost(leastFit)) {
+                leastFit = i;
+            }
+        }
+        this.population[leastFit] = Arrays.copyOf(member, this.numberOfCities);
+        if (this.hashes != null) {
+            this.hashes[leastFit] = TourHash.hash(member);
+        }
+        if (this.cost(leastFit) < this.memberFitness(this.bestMember, true)) {
+            this.bestMember = Arrays.copyOf(member, this.numberOfCities);
         }
     }
 
@@ -98,9 +461,19 @@ public class TSPSolver {
         double crossoverRate = .5;
         for (int i = 0; i < this.population.length - 1; i += 2) {
 
-            double randomNumber = rng.nextDouble();
+            double randomNumber = RandomSource.current().nextDouble();
             if (randomNumber < crossoverRate) {
-                Crossover.cycle(this.population[i], this.population[i + 1]);
+                if (this.crossoverOperators == null) {
+                    Crossover.cycle(this.population[i], this.population[i + 1]);
+                }
+                else {
+                    this.adaptiveCrossover(this.population[i],
+                            this.population[i + 1]);
+                }
+                if (this.hashes != null) {
+                    this.hashes[i] = TourHash.hash(this.population[i]);
+                    this.hashes[i + 1] = TourHash.hash(this.population[i + 1]);
+                }
             }
 
         }
@@ -112,15 +485,111 @@ public class TSPSolver {
      */
     public void mutation() {
         double mutationRate = .5;
-        for (int[] permutation : this.population) {
+        for (int i = 0; i < this.population.length; i++) {
+            int[] permutation = this.population[i];
 
-            double randomNumber = rng.nextDouble();
+            double randomNumber = RandomSource.current().nextDouble();
             if (randomNumber < mutationRate) {
-                Mutation.reverse(permutation);
+                this.hashChangeKnown = false;
+                if (this.mutationOperators == null) {
+                    this.recordHashChange(Mutation.reverse(permutation));
+                }
+                else {
+                    this.adaptiveMutation(permutation);
+                }
+                if (this.hashes != null) {
+                    this.hashes[i] = this.hashChangeKnown
+                            ? this.hashes[i] ^ this.hashChange
+                            : TourHash.hash(permutation);
+                }
             }
         }
     }
 
+    /**
+     * Applies a mutation operator chosen by this.mutationOperators and rewards
+     * it with the resulting change in tour cost. The time charged to the
+     * operator includes working out that change: Or-opt works it out from the
+     * edges it changes, the other operators by evaluating the tour before and
+     * after.
+     *
+     * @param permutation The permutation to mutate.
+     */
+    private void adaptiveMutation(int[] permutation) {
+        int operator = this.mutationOperators.select();
+        long start = System.nanoTime();
+        int reduction = this.mutationOperators.get(operator).applyAsInt(permutation);
+        this.mutationOperators.reward(operator, reduction,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Records the change that a mutation operator made to the hash of the
+     * tour it mutated, so that mutation can update the hash of the member
+     * without hashing the whole tour again.
+     *
+     * @param change The exclusive or of the keys of the edges that the
+     * operator removed and added.
+     */
+    private void recordHashChange(long change) {
+        this.hashChange = change;
+        this.hashChangeKnown = true;
+    }
+
+    /**
+     * Applies a mutation operator that does not work out the change in tour
+     * cost itself.
+     *
+     * @param operator The mutation operator.
+     * @param permutation The permutation to mutate.
+     * @return The reduction in the cost of the tour; negative if the cost went
+     * up.
+     */
+    private int evaluated(Consumer<int[]> operator, int[] permutation) {
+        int before = (int) this.memberFitness(permutation, true);
+        operator.accept(permutation);
+        return before - (int) this.memberFitness(permutation, true);
+    }
+
+    /**
+     * Applies a crossover operator chosen by this.crossoverOperators and
+     * rewards it with the change in the cost of the better of the two tours.
+     *
+     * @param parent1 One of the permutations to be used in the crossover.
+     * @param parent2 The other permutation to be used in the crossover.
+     */
+    private void adaptiveCrossover(int[] parent1, int[] parent2) {
+        int operator = this.crossoverOperators.select();
+        int before = (int) Math.min(this.memberFitness(parent1, true),
+                this.memberFitness(parent2, true));
+        long start = System.nanoTime();
+        this.crossoverOperators.get(operator).accept(parent1, parent2);
+        int after = (int) Math.min(this.memberFitness(parent1, true),
+                this.memberFitness(parent2, true));
+        this.crossoverOperators.reward(operator, before - after,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Prints how each mutation and crossover operator performed, if the
+     * operators were chosen adaptively, and how often the costs of members
+     * were found in the transposition table, if there is one.
+     *
+     * @param out The stream to print to.
+     */
+    public void printOperatorStatistics(PrintStream out) {
+        if (this.mutationOperators != null) {
+            this.mutationOperators.printStatistics(out);
+            this.crossoverOperators.printStatistics(out);
+        }
+        if (this.transpositionTable != null) {
+            long hits = this.transpositionTable.getHits();
+            long misses = this.transpositionTable.getMisses();
+            out.printf("transposition table: %d hits, %d misses (%.1f%% hits)%n",
+                    hits, misses, 100.0 * hits / Math.max(hits + misses, 1));
+        }
+    }
+
     /**
      * Conducts fitness proportionate selection in combination with diversity.
      * If the population size is n, then the n members with the highest fitness
@@ -135,18 +604,57 @@ public class TSPSolver {
         double[] fitnesses = this.memberFitnesses();
         int[][] newPopulation = new int[this.population.length][this.numberOfCities];
 
+        /*
+         * With a transposition table, members whose tour has the same hash as
+         * a member that has already been selected are clones and are skipped,
+         * as long as there is anything else left to select. A member that is
+         * selected a second time anyway is copied, so that every member has
+         * its own array and its own hash.
+         */
+        long[] newHashes = null;
+        boolean[] clones = null;
+        boolean[] taken = null;
+        if (this.hashes != null) {
+            newHashes = new long[this.population.length];
+            clones = new boolean[this.population.length];
+            taken = new boolean[this.population.length];
+        }
+
         for (int i = 0; i < this.population.length; i++) {
+            int index = -1;
             if (i == 0) {
-                newPopulation[i] = this.mostFit();
+                index = this.mostFitIndex();
             }
             else {
-                int index = this.bestFitnessPlusDiversity(fitnesses,
-                        newPopulation,
-                        i);
-                newPopulation[i] = this.population[index];
+                if (clones != null) {
+                    index = this.bestFitnessPlusDiversity(fitnesses,
+                            newPopulation, i, clones);
+                }
+                if (index == -1) {
+                    index = this.bestFitnessPlusDiversity(fitnesses,
+                            newPopulation,
+                            i);
+                }
+            }
+            newPopulation[i] = this.population[index];
+            if (clones != null) {
+                if (taken[index]) {
+                    newPopulation[i] = Arrays.copyOf(newPopulation[i],
+                            this.numberOfCities);
+                }
+                taken[index] = true;
+                newHashes[i] = this.hashes[index];
+                for (int j = 0; j < this.hashes.length; j++) {
+                    if (this.hashes[j] == newHashes[i]) {
+                        clones[j] = true;
+                    }
+                }
             }
         }
         this.population = newPopulation;
+        if (newHashes != null) {
+            this.hashes = newHashes;
+        }
 
     }
 
@@ -157,11 +665,17 @@ public class TSPSolver {
      */
     public void tournamentSelection(int t) {
         int[][] newPopulation = new int[this.population.length][this.numberOfCities];
+        long[] newHashes = null;
+        boolean[] taken = null;
+        if (this.hashes != null) {
+            newHashes = new long[this.population.length];
+            taken = new boolean[this.population.length];
+        }
 
         for (int i = 0; i < this.population.length; i++) {
             int[] temp = new int[t];
             for (int j = 0; j < temp.length; j++) {
-                temp[j] = rng.nextInt(this.population.length);
+                temp[j] = RandomSource.current().nextInt(this.population.length);
             }
             int index = 0;
             double bestFitness = this.memberFitness(this.population[temp[0]],
@@ -175,9 +689,20 @@ public class TSPSolver {
                 }
             }
             newPopulation[i] = this.population[temp[index]];
+            if (newHashes != null) {
+                if (taken[temp[index]]) {
+                    newPopulation[i] = Arrays.copyOf(newPopulation[i],
+                            this.numberOfCities);
+                }
+                taken[temp[index]] = true;
+                newHashes[i] = this.hashes[temp[index]];
+            }
 
         }
         this.population = newPopulation;
+        if (newHashes != null) {
+            this.hashes = newHashes;
+        }
     }
 
     /**
@@ -189,7 +714,7 @@ public class TSPSolver {
     public double[] memberFitnesses() {
         double[] fitnesses = new double[this.population.length];
         for (int i = 0; i < fitnesses.length; i++) {
-            fitnesses[i] = this.memberFitness(this.population[i], false);
+            fitnesses[i] = 42.0 / this.cost(i);
         }
         return fitnesses;
     }
@@ -204,9 +729,29 @@ public class TSPSolver {
      * @return The index of the population member that has the best fitness + diversity.
      */
     public int bestFitnessPlusDiversity(double[] fitnesses, int[][] permutations, int limit) {
+        return this.bestFitnessPlusDiversity(fitnesses, permutations, limit,
+                new boolean[fitnesses.length]);
+    }
+
+    /**
+     * Determines the population member that has the best fitness + diversity,
+     * ignoring the members that are excluded.
+     *
+     * @param fitnesses The fitnesses of the permutations comprising the population.
+     * @param permutations The permutations against which the diversities are to be measured.
+     * @param limit The number of permutations against which to measure the diversities.
+     * @param excluded Flags the population members that may not be chosen.
+     * @return The index of the population member that has the best fitness +
+     * diversity, or -1 if every member is excluded.
+     */
+    private int bestFitnessPlusDiversity(double[] fitnesses, int[][] permutations, int limit,
+            boolean[] excluded) {
         int index = -1;
         double bestCombination = -1;
         for (int i = 0; i < fitnesses.length; i++) {
+            if (excluded[i]) {
+                continue;
+            }
             double temp = this.diversity(this.population[i], permutations, limit) + fitnesses[i];
             if (temp > bestCombination) {
                 bestCombination = temp;
@@ -223,16 +768,63 @@ public class TSPSolver {
      * highest fitness.
      */
     public int[] mostFit() {
-        int[] currentBestMember = this.population[0];
-        double best = Double.MIN_VALUE;
-        for (int i = 1; i < this.population.length; i++) {
-            double temp = this.memberFitness(this.population[i], false);
-            if (temp > best) {
+        return this.population[this.mostFitIndex()];
+    }
+
+    /**
+     * Finds the member of the population that has the highest fitness, i.e.
+     * the lowest tour cost.
+     *
+     * @return The index of the member in the population.
+     */
+    private int mostFitIndex() {
+        int index = 0;
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < this.population.length; i++) {
+            int temp = this.cost(i);
+            if (temp < best) {
                 best = temp;
-                currentBestMember = this.population[i];
+                index = i;
             }
         }
-        return currentBestMember;
+        return index;
+    }
+
+    /**
+     * Computes the cost of the tour of a member of the population. With a
+     * transposition table, the cost is looked up by the hash of the member
+     * first, and only computed (and remembered) if it is not found.
+     *
+     * @param index The index of the member in the population.
+     * @return The cost of the tour represented by the member.
+     */
+    private int cost(int index) {
+        if (this.hashes == null) {
+            return (int) this.memberFitness(this.population[index], true);
+        }
+        int cost = this.transpositionTable.get(this.hashes[index]);
+        if (cost < 0) {
+            cost = (int) this.memberFitness(this.population[index], true);
+            this.transpositionTable.put(this.hashes[index], cost);
+        }
+        return cost;
+    }
+
+    /**
+     * Computes the hash of every member of the population from scratch, and
+     * copies members that share an array with an earlier member, so that a
+     * hash can be kept for each of them.
+     */
+    private void rehashPopulation() {
+        this.hashes = new long[this.population.length];
+        Set<int[]> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < this.population.length; i++) {
+            if (!seen.add(this.population[i])) {
+                this.population[i] = Arrays.copyOf(this.population[i],
+                        this.numberOfCities);
+            }
+            this.hashes[i] = TourHash.hash(this.population[i]);
+        }
     }
 
     /**
@@ -315,8 +907,9 @@ public class TSPSolver {
         for (int i = 0; i < this.numberOfCities; i++) {
             temp[i] = i;
         }
+        Random random = RandomSource.current();
         for (int i = 0; i < temp.length - 1; i++) {
-            int randomIndex = rng.nextInt(i, temp.length);
+            int randomIndex = random.nextInt(i, temp.length);
             int saved = temp[i];
             temp[i] = temp[randomIndex];
             temp[randomIndex] = saved;
@@ -374,7 +967,7 @@ public class TSPSolver {
     }
 
     public void iterativeSampling() {
-        int min = Integer.MAX_VALUE;
+        int min = (int) this.memberFitness(this.bestMember, true);
         for (int i = 0; i < this.numberOfGenerations; i++) {
             int[] temp = this.randomPermutation();
             int cost = (int) this.memberFitness(temp, true);
@@ -386,7 +979,7 @@ public class TSPSolver {
     }
 
     public int[] VBSS(double b) {
-        int startingCity = rng.nextInt(this.numberOfCities);
+        int startingCity = RandomSource.current().nextInt(this.numberOfCities);
         int[] tour = new int[this.numberOfCities];
         tour[0] = startingCity;
         Set<Integer> citiesUsed = new HashSet<>();
@@ -394,13 +987,30 @@ public class TSPSolver {
 
         for (int i = 1; i < tour.length; i++) {
             double denominator = 0;
+            int colocatedCity = -1;
             for (int j = 0; j < this.numberOfCities; j++) {
                 if (!citiesUsed.contains(j)) {
+                    if (this.distancesBetweenCities[startingCity][j] == 0) {
+                        colocatedCity = j;
+                        break;
+                    }
                     denominator += 1.0 / Math.pow(
                             this.distancesBetweenCities[startingCity][j], b);
                 }
             }
 
+            /*
+             * A city at (rounded) distance zero would get an infinite weight
+             * and make every probability NaN, and visiting it next costs
+             * nothing, so it is chosen directly.
+             */
+            if (colocatedCity >= 0) {
+                tour[i] = colocatedCity;
+                citiesUsed.add(colocatedCity);
+                startingCity = colocatedCity;
+                continue;
+            }
+
             double[] cityProbabilities = new double[this.numberOfCities - i];
             Map<Integer, Integer> indexesToCities = new HashMap<>();
             int k = 0;
@@ -417,9 +1027,14 @@ public class TSPSolver {
             for (int j = 1; j < cityProbabilities.length; j++) {
                 cityProbabilities[j] += cityProbabilities[j - 1];
             }
-            double randomNumber = rng.nextDouble();
+            /*
+             * Rounding can leave the last cumulative probability slightly below
+             * one, so the last city is chosen if no other city is.
+             */
+            double randomNumber = RandomSource.current().nextDouble();
             for (int j = 0; j < cityProbabilities.length; j++) {
-                if (randomNumber < cityProbabilities[j]) {
+                if (randomNumber < cityProbabilities[j]
+                        || j == cityProbabilities.length - 1) {
                     int nextCity = indexesToCities.get(j);
                     tour[i] = nextCity;
                     citiesUsed.add(nextCity);
@@ -439,7 +1054,7 @@ public class TSPSolver {
      * @param b The parameter "B" in the VBSS formula.
      */
     public void VBSS(int samples, double b) {
-        int best = Integer.MAX_VALUE;
+        int best = (int) this.memberFitness(this.bestMember, true);
         for (int i = 0; i < samples; i++) {
             int[] tour = this.VBSS(b);
             int fitness = (int) this.memberFitness(tour, true);
@@ -450,14 +1065,84 @@ public class TSPSolver {
         }
     }
 
+    /**
+     * Returns the Or-opt local search for this TSP instance, building the
+     * nearest-neighbor lists of the cities the first time it is called.
+     *
+     * @return The Or-opt local search.
+     */
+    public OrOpt orOpt() {
+        if (this.orOpt == null) {
+            this.orOpt = new OrOpt(this.distancesBetweenCities,
+                    this.numberOfCities, 10);
+        }
+        return this.orOpt;
+    }
+
+    /**
+     * Improves the lowest cost tour found with Or-opt local search, e.g. after
+     * VBSS or the genetic algorithm has finished.
+     *
+     * @return The reduction in the cost of the tour.
+     */
+    public int improveBestMember() {
+        this.bestMember = Arrays.copyOf(this.bestMember, this.numberOfCities);
+        return this.orOpt().improve(this.bestMember);
+    }
+
+    public int[] getBestMember() {
+        return this.bestMember;
+    }
+
     /**
      * Prints the lowest cost tour found, followed by the tour itself (given as
      * integers that each represent a city) with one city per line.
      */
     public void printResults() {
-        System.out.println((int) this.memberFitness(this.bestMember, true));
-        for (int x : this.bestMember) {
-            System.out.println(x + 1);
+        printTour((int) this.memberFitness(this.bestMember, true), this.bestMember);
+    }
+
+    /**
+     * Prints the cost of a tour, followed by the tour itself (given as
+     * integers that each represent a city) with one city per line. The output
+     * is built in memory and printed at once, which is much faster than
+     * printing the cities one by one on large instances.
+     *
+     * @param cost The cost of the tour.
+     * @param tour The tour, with cities numbered from zero.
+     */
+    public static void printTour(int cost, int[] tour) {
+        StringBuilder results = new StringBuilder();
+        results.append(cost).append('\n');
+        for (int x : tour) {
+            results.append(x + 1).append('\n');
+        }
+        System.out.print(results);
+    }
+
+    /**
+     * Writes the lowest cost tour found to a TSPLIB .tour file.
+     *
+     * @param fileName The name of the file.
+     * @param name The name of the tour.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeTour(String fileName, String name) throws IOException {
+        TourFile.write(fileName, name, this.bestMember,
+                (int) this.memberFitness(this.bestMember, true));
+    }
+
+    /**
+     * Constructs the permutation 0, 1, ..., (this.numberOfCities - 1), which is
+     * the best member until a better one is found.
+     *
+     * @return The identity permutation.
+     */
+    private int[] identityPermutation() {
+        int[] identity = new int[this.numberOfCities];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
         }
+        return identity;
     }
 }
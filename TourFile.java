@@ -0,0 +1,111 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * A class that reads and writes tours in the TSPLIB .tour format, so that the
+ * best tour of one run can be saved and used as the starting point of another.
+ * In the file the cities are numbered from 1, as in the .tsp files and in the
+ * output of printResults; in memory they are numbered from 0, as in TSPSolver.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class TourFile {
+
+    /**
+     * Reads a tour from a TSPLIB .tour file.
+     *
+     * @param fileName The name of the file.
+     * @return The cities of the tour, numbered from 0.
+     * @throws IOException If the file cannot be read, or is not a .tour file.
+     */
+    public static int[] read(String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            int size = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.startsWith("DIMENSION")) {
+                    size = Integer.valueOf(line.split(":")[1].strip());
+                }
+                else if (line.startsWith("TOUR_SECTION")) {
+                    break;
+                }
+            }
+            if (size < 0 || line == null) {
+                throw new IOException(fileName + " has no DIMENSION or no TOUR_SECTION");
+            }
+
+            int[] tour = new int[size];
+            int count = 0;
+            while ((line = reader.readLine()) != null) {
+                for (String field : line.strip().split("\\s+")) {
+                    if (field.isEmpty()) {
+                        continue;
+                    }
+                    int city = Integer.valueOf(field);
+                    if (city == -1) {
+                        return checkedTour(tour, count, fileName);
+                    }
+                    if (count == size) {
+                        throw new IOException(fileName + " has more than " + size + " cities");
+                    }
+                    tour[count++] = city - 1;
+                }
+            }
+            return checkedTour(tour, count, fileName);
+        }
+    }
+
+    /**
+     * Makes sure that a tour that has been read visits every city once.
+     */
+    private static int[] checkedTour(int[] tour, int count, String fileName) throws IOException {
+        if (count != tour.length) {
+            throw new IOException(fileName + " has " + count + " cities, not " + tour.length);
+        }
+        boolean[] seen = new boolean[tour.length];
+        for (int city : tour) {
+            if (city < 0 || city >= tour.length || seen[city]) {
+                throw new IOException(fileName + " does not visit every city once");
+            }
+            seen[city] = true;
+        }
+        return tour;
+    }
+
+    /**
+     * Writes a tour to a TSPLIB .tour file.
+     *
+     * @param fileName The name of the file.
+     * @param name The name of the tour, written in the NAME field.
+     * @param tour The cities of the tour, numbered from 0.
+     * @param cost The cost of the tour, written in the COMMENT field.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(String fileName, String name, int[] tour, int cost) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            writer.write("NAME : " + name);
+            writer.newLine();
+            writer.write("COMMENT : Length " + cost);
+            writer.newLine();
+            writer.write("TYPE : TOUR");
+            writer.newLine();
+            writer.write("DIMENSION : " + tour.length);
+            writer.newLine();
+            writer.write("TOUR_SECTION");
+            writer.newLine();
+            for (int city : tour) {
+                writer.write(Integer.toString(city + 1));
+                writer.newLine();
+            }
+            writer.write("-1");
+            writer.newLine();
+            writer.write("EOF");
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * A class that computes Zobrist-style hashes of tours. The hash of a tour is
+ * the exclusive or of a pseudo-random 64-bit key for each of its edges, so two
+ * permutations that represent the same tour (one being a rotation or a
+ * reversal of the other) always have the same hash.
+ *
+ * Because exclusive or is its own inverse, an operator that replaces some of
+ * the edges of a tour can update the hash in constant time per edge:
+ * hash ^ edgeKey(a, b) removes the edge (a, b) from the hash, and applying it
+ * again puts the edge back.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class TourHash {
+
+    /**
+     * Computes the key of the undirected edge between two cities. Rather than
+     * storing a table of random keys, which would need one entry for every
+     * pair of cities, the key is derived from the pair with the SplitMix64
+     * finalizer.
+     *
+     * @param a One of the cities of the edge.
+     * @param b The other city of the edge.
+     * @return The key of the edge, which is the same for (a, b) and (b, a).
+     */
+    public static long edgeKey(int a, int b) {
+        long z = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the hash of the tour represented by a permutation.
+     *
+     * @param tour The permutation whose hash is to be computed.
+     * @return The exclusive or of the keys of every edge of the tour.
+     */
+    public static long hash(int[] tour) {
+        long hash = 0;
+        for (int i = 0; i < tour.length - 1; i++) {
+            hash ^= edgeKey(tour[i], tour[i + 1]);
+        }
+        return hash ^ edgeKey(tour[tour.length - 1], tour[0]);
+    }
+}
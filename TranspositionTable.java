@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+/**
+ * A bounded cache from tour hashes (see TourHash) to tour costs, so that a tour
+ * that has been seen before does not have to be evaluated again. The table is
+ * made of primitive arrays and never grows: it is divided into buckets of two
+ * entries, a new entry always goes into the first entry of its bucket, and the
+ * entry that was there before moves to the second entry, evicting whatever was
+ * in it.
+ *
+ * @author Menachem Rosenberg
+ * @author Robert Purnell Thurston
+ */
+public class TranspositionTable {
+
+    /*
+     * The hash stored in each entry. A hash of zero marks an empty entry, so a
+     * tour whose hash really is zero is stored under the hash one instead.
+     */
+    private long[] keys;
+
+    private int[] costs;
+
+    /*
+     * Selects the first entry of a bucket from a hash.
+     */
+    private int mask;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param capacity The number of entries in the table, which is rounded up
+     * to a power of two.
+     */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.keys = new long[size];
+        this.costs = new int[size];
+        this.mask = size - 2;
+    }
+
+    /**
+     * Looks up the cost of a tour.
+     *
+     * @param hash The hash of the tour.
+     * @return The cost of the tour, or -1 if it is not in the table.
+     */
+    public int get(long hash) {
+        hash = hash == 0 ? 1 : hash;
+        int index = (int) (hash ^ (hash >>> 32)) & this.mask;
+        if (this.keys[index] == hash) {
+            this.hits++;
+            return this.costs[index];
+        }
+        if (this.keys[index + 1] == hash) {
+            this.hits++;
+            return this.costs[index + 1];
+        }
+        this.misses++;
+        return -1;
+    }
+
+    /**
+     * Stores the cost of a tour, possibly evicting an older entry.
+     *
+     * @param hash The hash of the tour.
+     * @param cost The cost of the tour.
+     */
+    public void put(long hash, int cost) {
+        hash = hash == 0 ? 1 : hash;
+        int index = (int) (hash ^ (hash >>> 32)) & this.mask;
+        if (this.keys[index] != hash) {
+            this.keys[index + 1] = this.keys[index];
+            this.costs[index + 1] = this.costs[index];
+            this.keys[index] = hash;
+        }
+        this.costs[index] = cost;
+    }
+
+    /**
+     * Removes every entry, e.g. when the costs of a different TSP instance are
+     * to be stored.
+     */
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+}